@@ -0,0 +1,90 @@
+package com.crossover.trial.weather;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares extracting the iata code, latitude and longitude of a 100k row airports file the way AirportLoader used
+ * to, by splitting each line read with a BufferedReader, with the memory mapped {@link AirportCsvParser}.
+ *
+ * Airport names hold no commas, which splitting lines would get wrong. Run with -prof gc to compare allocation
+ * rates too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AirportCsvParseBenchmark {
+
+    private static final int ROWS = 100000;
+
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(7);
+        StringBuilder csv = new StringBuilder(ROWS * 110);
+        for (int i = 1; i <= ROWS; i++) {
+            String iata = "" + (char) ('A' + i % 26) + (char) ('A' + i / 26 % 26) + (char) ('A' + i / 676 % 26);
+            csv.append(i).append(",\"Airport ").append(i).append(" Intl\",\"City ").append(i)
+                    .append("\",\"Country\",\"").append(iata).append("\",\"K").append(iata).append("\",")
+                    .append(random.nextDouble() * 180 - 90).append(',').append(random.nextDouble() * 360 - 180)
+                    .append(',').append(random.nextInt(5000)).append(",-5,\"A\"\n");
+        }
+        file = Files.createTempFile("airports", ".dat");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public void splitLines(Blackhole bh) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            StringBuilder chunk = new StringBuilder();
+            String l;
+            while ((l = reader.readLine()) != null) {
+                String[] fields = l.split(",");
+                chunk.append(AirportLoader.removeQuoationMarks(fields[4])).append(',').append(fields[6]).append(',')
+                        .append(fields[7]).append('\n');
+                bh.consume(chunk);
+                chunk.setLength(0);
+            }
+        }
+    }
+
+    @Benchmark
+    public void mappedParser(Blackhole bh) throws IOException {
+        AirportCsvParser parser = AirportCsvParser.map(file);
+        StringBuilder chunk = new StringBuilder();
+        while (parser.next()) {
+            parser.append(AirportCsvParser.IATA, chunk).append(',');
+            parser.append(AirportCsvParser.LATITUDE, chunk).append(',');
+            parser.append(AirportCsvParser.LONGITUDE, chunk).append('\n');
+            bh.consume(chunk);
+            chunk.setLength(0);
+        }
+    }
+}
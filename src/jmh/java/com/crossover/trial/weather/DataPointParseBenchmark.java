@@ -0,0 +1,53 @@
+package com.crossover.trial.weather;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading a collected data point the way updateWeather used to, by decoding the request body to a String
+ * and mapping it with gson, with the streaming {@link DataPointParser}.
+ *
+ * Run with -prof gc to compare allocation rates too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataPointParseBenchmark {
+
+    /** the request body as sent by collectors */
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        DataPoint dp = new DataPoint.Builder()
+                .withCount(10).withFirst(10).withMean(22.5).withThird(30).withSecond(22).build();
+        body = AirportService.gson.toJson(dp).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public DataPoint stringAndGson() {
+        String dataPointJson = new String(body, StandardCharsets.UTF_8);
+        return AirportService.gson.fromJson(dataPointJson, DataPoint.class);
+    }
+
+    @Benchmark
+    public DataPoint streaming() throws IOException {
+        return DataPointParser.parse(new ByteArrayInputStream(body));
+    }
+}
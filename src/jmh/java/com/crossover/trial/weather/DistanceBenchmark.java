@@ -0,0 +1,90 @@
+package com.crossover.trial.weather;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares checking which of 10k airports are within 500 km of a center with the haversine formula calculateDistance
+ * used to compute from degrees, with {@link AirportService#calculateDistance} on precomputed unit vectors, and with
+ * the squared chord kernel {@link GreatCircle#within} over packed vectors, which radius queries use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    private static final int AIRPORTS = 10000;
+
+    private static final double RADIUS = 500;
+
+    private AirportData center;
+
+    private AirportData[] airports;
+
+    private double[] xyz;
+
+    private int[] selected;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        center = new AirportData();
+        center.setLatitude(40);
+        center.setLongitude(-74);
+        airports = new AirportData[AIRPORTS];
+        xyz = new double[AIRPORTS * 3];
+        selected = new int[AIRPORTS];
+        for (int i = 0; i < AIRPORTS; i++) {
+            airports[i] = new AirportData();
+            airports[i].setLatitude(30 + random.nextDouble() * 20);
+            airports[i].setLongitude(-90 + random.nextDouble() * 30);
+            GreatCircle.unitVector(airports[i].getLatitude(), airports[i].getLongitude(), xyz, 3 * i);
+        }
+    }
+
+    @Benchmark
+    public int haversineDegrees() {
+        int n = 0;
+        for (AirportData ad : airports) {
+            double deltaLat = Math.toRadians(ad.getLatitude() - center.getLatitude());
+            double deltaLon = Math.toRadians(ad.getLongitude() - center.getLongitude());
+            double a =  Math.pow(Math.sin(deltaLat / 2), 2) + Math.pow(Math.sin(deltaLon / 2), 2)
+                    * Math.cos(Math.toRadians(center.getLatitude())) * Math.cos(Math.toRadians(ad.getLatitude()));
+            if (AirportService.R * 2 * Math.asin(Math.sqrt(a)) <= RADIUS) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int unitVectorDistance() {
+        int n = 0;
+        for (AirportData ad : airports) {
+            if (AirportService.calculateDistance(center, ad) <= RADIUS) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int packedChordKernel() {
+        return GreatCircle.within(xyz, AIRPORTS, center.x, center.y, center.z, GreatCircle.maxChord2(RADIUS),
+                selected);
+    }
+}
@@ -0,0 +1,139 @@
+package com.crossover.trial.weather;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput and latency percentiles of the service's hot paths, called in process on the end points
+ * and {@link AirportService} with airports spread uniformly over the globe, each holding a wind reading. Every call
+ * picks a random airport, so the numbers include cache misses over the whole index.
+ *
+ * The single operation benchmarks run with 4 threads, and the mixed group runs 3 threads querying the weather at
+ * radius 0 against 1 thread collecting data points. Change the thread count with -t, the read/write mix with -tg,
+ * for example -tg 1,7 for 1 writer and 7 readers, and the airport counts or radius with -p. Keep the results of a
+ * release with -rf json -rff weather-x.y.json to compare them with the next one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class WeatherServiceBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int airports;
+
+    /** radius of the radius N weather query, in km */
+    @Param({"200"})
+    public String radius;
+
+    private final WeatherQueryEndpoint query = new RestWeatherQueryEndpoint();
+
+    private final WeatherCollectorEndpoint collector = new RestWeatherCollectorEndpoint();
+
+    private String[] codes;
+
+    private DataPoint dp;
+
+    /** dp as sent by collectors */
+    private String dpJson;
+
+    @Setup
+    public void setUp() throws WeatherException {
+        Random random = new Random(7);
+        codes = new String[airports];
+        List<AirportData> list = new ArrayList<>(airports);
+        for (int i = 0; i < airports; i++) {
+            codes[i] = String.format("A%06d", i);
+            AirportData ad = new AirportData();
+            ad.setIata(codes[i]);
+            // uniform over the sphere rather than the lat/lon rectangle
+            ad.setLatitude(Math.toDegrees(Math.asin(2 * random.nextDouble() - 1)));
+            ad.setLongitude(360 * random.nextDouble() - 180);
+            list.add(ad);
+        }
+        AirportService.clear();
+        AirportService.newAirports(list);
+        dp = new DataPoint.Builder().withCount(10).withFirst(10).withMean(22.5).withThird(30).withSecond(22).build();
+        dpJson = AirportService.gson.toJson(dp);
+        for (String code : codes) {
+            AirportService.addDataPoint(code, "wind", dp);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        AirportService.clear();
+    }
+
+    private String randomCode() {
+        return codes[ThreadLocalRandom.current().nextInt(codes.length)];
+    }
+
+    @Benchmark
+    public AirportData findAirportData() {
+        return AirportService.findAirportData(randomCode());
+    }
+
+    @Benchmark
+    public void addDataPoint() throws WeatherException {
+        AirportService.addDataPoint(randomCode(), "wind", dp);
+    }
+
+    @Benchmark
+    public void updateRequestFrequency() {
+        AirportService.updateRequestFrequency(randomCode(), 0);
+    }
+
+    @Benchmark
+    public Response weatherRadius0() {
+        return query.weather(randomCode(), "0");
+    }
+
+    @Benchmark
+    public Response weatherRadiusN() {
+        return query.weather(randomCode(), radius);
+    }
+
+    @Benchmark
+    public String ping() {
+        return query.ping();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Response mixedQuery() {
+        return query.weather(randomCode(), "0");
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Response mixedCollect() {
+        return collector.updateWeather(randomCode(), "wind", dpJson);
+    }
+}
@@ -0,0 +1,334 @@
+package com.crossover.trial.weather;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes a line per request to a file from a background thread, so request threads never wait for the disk or
+ * the console.
+ *
+ * Request threads claim a slot of a bounded ring of preallocated entries with a compare and set, fill it and
+ * publish it; no lock is taken and nothing is allocated. When the ring is full the request is not logged and only
+ * counted as dropped, so a slow disk never slows requests down. The writer thread drains every published entry,
+ * formats them and writes them with a single write, then polls again every {@link #POLL_MILLIS} when the ring is
+ * empty.
+ *
+ * Successful requests may be sampled, while requests answered with an error status are always logged. Once the
+ * file reaches its maximum size it is renamed to file.1, the previous file.1 to file.2 and so on, and the oldest
+ * beyond the number of files kept is deleted. If that fails the file is reopened and appended to, and rotation is
+ * tried again once another maximum size has been written. A batch which can not be written is counted as dropped,
+ * and the file is reopened for the next one; the failure is logged once, until a batch is written again.
+ *
+ * Each line is the time the request completed, the method, the path and query, the status and the time taken in
+ * milliseconds, separated by spaces.
+ *
+ * @author daniel
+ *
+ */
+public class AccessLog implements Closeable {
+
+    public final static Logger LOGGER = Logger.getLogger(AccessLog.class.getName());
+
+    /** number of entries the ring holds by default */
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    /** size of a file before it is rotated by default, in bytes */
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+    /** number of rotated files kept by default */
+    public static final int DEFAULT_FILES = 5;
+
+    /** time the writer thread waits when the ring is empty */
+    private static final long POLL_MILLIS = 10;
+
+    /** a request to log, reused once written */
+    private static final class Entry {
+        /**
+         * the position in the ring this entry may next be claimed for, or one more than the position it holds a
+         * published request for
+         */
+        volatile long sequence;
+        long time;
+        String method;
+        String uri;
+        String query;
+        int status;
+        long durationNanos;
+    }
+
+    private final Entry[] ring;
+
+    private final int mask;
+
+    /** next position to claim */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** next position to write, only used by the writer thread */
+    private long head;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final Path file;
+
+    private final long maxBytes;
+
+    private final int files;
+
+    /** fraction of the successful requests logged */
+    private final double sample;
+
+    /** the file being written, null if it could not be opened, only used by the writer thread */
+    private OutputStream out;
+
+    /** whether the last batch could not be written, only used by the writer thread */
+    private boolean failing;
+
+    /** bytes written to the current file, only used by the writer thread */
+    private long size;
+
+    private final Thread writer;
+
+    private volatile boolean closed;
+
+    /**
+     * Opens the file, appending to it, and starts the writer thread.
+     *
+     * @param file the log file
+     * @param capacity number of entries the ring holds, rounded up to a power of two
+     * @param maxBytes size of a file before it is rotated, in bytes
+     * @param files number of rotated files kept, 0 to delete the file when it is rotated
+     * @param sample fraction of the requests answered with a success status which are logged, between 0 and 1
+     * @throws IOException if the file can not be opened
+     */
+    public AccessLog(Path file, int capacity, long maxBytes, int files, double sample) throws IOException {
+        if (capacity < 1 || maxBytes < 1 || files < 0 || !(sample >= 0 && sample <= 1)) {
+            throw new IllegalArgumentException("invalid capacity " + capacity + ", maximum size " + maxBytes
+                    + ", files " + files + " or sample " + sample);
+        }
+        int length = 1;
+        while (length < capacity) {
+            length <<= 1;
+        }
+        ring = new Entry[length];
+        mask = ring.length - 1;
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Entry();
+            ring[i].sequence = i;
+        }
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.files = files;
+        this.sample = sample;
+        out = open();
+        writer = new Thread(this::write, "weather-access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a request to be logged, unless it is sampled out or the ring is full.
+     *
+     * @param method the http method
+     * @param uri the request path
+     * @param query the query string, or null if there is none
+     * @param status the response status, 0 if the request was cancelled
+     * @param durationNanos the time taken to handle the request, in nanoseconds
+     */
+    void log(String method, String uri, String query, int status, long durationNanos) {
+        if (closed) {
+            return;
+        }
+        if (status > 0 && status < 400 && sample < 1 && ThreadLocalRandom.current().nextDouble() >= sample) {
+            return;
+        }
+        long position = tail.get();
+        Entry entry;
+        while (true) {
+            entry = ring[(int) position & mask];
+            long available = entry.sequence - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                // the writer has not written this slot's previous entry yet
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        entry.time = System.currentTimeMillis();
+        entry.method = method;
+        entry.uri = uri;
+        entry.query = query;
+        entry.status = status;
+        entry.durationNanos = durationNanos;
+        entry.sequence = position + 1;
+    }
+
+    /** @return the number of requests not logged as the ring was full or they could not be written */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /** @return the number of requests written */
+    long written() {
+        return written.sum();
+    }
+
+    /** the writer thread: writes published entries in batches until closed, then what is left */
+    private void write() {
+        StringBuilder batch = new StringBuilder(64 * 1024);
+        while (true) {
+            boolean last = closed;
+            int count = 0;
+            Entry entry = ring[(int) head & mask];
+            while (count < ring.length && entry.sequence == head + 1) {
+                format(entry, batch);
+                entry.uri = null;
+                entry.query = null;
+                entry.sequence = head + ring.length;
+                head++;
+                count++;
+                entry = ring[(int) head & mask];
+            }
+            if (count > 0) {
+                flush(batch, count);
+                batch.setLength(0);
+            } else if (last) {
+                return;
+            } else {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS));
+            }
+        }
+    }
+
+    /** writes a batch, or counts it as dropped if it can not be written, and rotates the file once it is full */
+    private void flush(StringBuilder batch, int count) {
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            if (out == null) {
+                out = open();
+            }
+            out.write(bytes);
+            out.flush();
+        } catch (IOException e) {
+            dropped.add(count);
+            closeOut();
+            if (!failing) {
+                failing = true;
+                LOGGER.log(Level.WARNING, "could not write access log " + file + ", dropping requests until it can",
+                        e);
+            }
+            return;
+        }
+        if (failing) {
+            failing = false;
+            LOGGER.info("writing access log " + file + " again");
+        }
+        written.add(count);
+        size += bytes.length;
+        if (size >= maxBytes) {
+            rotate();
+        }
+    }
+
+    private static void format(Entry entry, StringBuilder sb) {
+        sb.append(Instant.ofEpochMilli(entry.time)).append(' ').append(entry.method).append(' ').append(entry.uri);
+        if (entry.query != null && !entry.query.isEmpty()) {
+            sb.append('?').append(entry.query);
+        }
+        long micros = entry.durationNanos / 1000;
+        sb.append(' ').append(entry.status).append(' ').append(micros / 1000).append('.');
+        for (long digit = 100; digit > 1 && micros % 1000 < digit; digit /= 10) {
+            sb.append('0');
+        }
+        sb.append(micros % 1000).append('\n');
+    }
+
+    private OutputStream open() throws IOException {
+        size = Files.exists(file) ? Files.size(file) : 0;
+        return Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Renames the current file and its predecessors one number up and starts a new file. If a file can not be
+     * renamed or deleted, the current file is reopened instead. If no file can be opened, the next batch tries again.
+     */
+    private void rotate() {
+        closeOut();
+        boolean rotated = false;
+        try {
+            if (files == 0) {
+                Files.delete(file);
+            } else {
+                Files.deleteIfExists(rotated(files));
+                for (int i = files - 1; i >= 1; i--) {
+                    if (Files.exists(rotated(i))) {
+                        Files.move(rotated(i), rotated(i + 1));
+                    }
+                }
+                Files.move(file, rotated(1));
+            }
+            rotated = true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "could not rotate access log " + file + ", appending to it", e);
+        }
+        try {
+            out = open();
+        } catch (IOException e) {
+            // counted and logged by the next batch when it fails to open the file again
+            return;
+        }
+        if (!rotated) {
+            // try again once another maximum size has been written, rather than on every batch
+            size = 0;
+        }
+    }
+
+    private void closeOut() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // every batch written was flushed
+            }
+            out = null;
+        }
+    }
+
+    private Path rotated(int i) {
+        return file.resolveSibling(file.getFileName() + "." + i);
+    }
+
+    /**
+     * Writes what is queued and stops the writer thread. Later requests are not logged.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeOut();
+    }
+}
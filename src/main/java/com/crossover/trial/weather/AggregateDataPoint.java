@@ -0,0 +1,79 @@
+package com.crossover.trial.weather;
+
+/**
+ * Summarizes the data points of one type collected at several airports, as returned by the aggregate query.
+ *
+ * @author daniel
+ */
+public class AggregateDataPoint {
+
+    /** the number of airports with a data point of this type */
+    private int airports;
+
+    /** the total number of measurements */
+    private long count;
+
+    /** the mean of the airports' means, weighted by count, or evenly if all counts are 0 */
+    private double mean;
+
+    /** the lowest of the airports' means */
+    private double min;
+
+    /** the highest of the airports' means */
+    private double max;
+
+    /** the requested percentile of the airports' 1st quartiles */
+    private int first;
+
+    /** the requested percentile of the airports' 2nd quartiles */
+    private int second;
+
+    /** the requested percentile of the airports' 3rd quartiles */
+    private int third;
+
+    public AggregateDataPoint() { }
+
+    public AggregateDataPoint(int airports, long count, double mean, double min, double max, int first, int second,
+                              int third) {
+        this.airports = airports;
+        this.count = count;
+        this.mean = mean;
+        this.min = min;
+        this.max = max;
+        this.first = first;
+        this.second = second;
+        this.third = third;
+    }
+
+    public int getAirports() {
+        return airports;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getSecond() {
+        return second;
+    }
+
+    public int getThird() {
+        return third;
+    }
+}
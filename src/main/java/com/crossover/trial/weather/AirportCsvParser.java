@@ -0,0 +1,271 @@
+package com.crossover.trial.weather;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads airport records in the OpenFlights airports.dat csv format, where the iata code, latitude and longitude are
+ * the 5th, 7th and 8th fields. Fields follow RFC 4180: they may be quoted, and a quoted field may hold commas, line
+ * breaks and quotes escaped by doubling them. Records end with LF or CRLF.
+ *
+ * The parser walks a byte buffer, typically a memory mapped file, and only records where the leading fields of the
+ * current record start and end. Fields are copied out on demand with {@link #append(int, StringBuilder)} or converted
+ * with {@link #number(int)}, without allocating a String per field.
+ */
+class AirportCsvParser {
+
+    /** index of the iata code field */
+    static final int IATA = 4;
+
+    /** index of the latitude field */
+    static final int LATITUDE = 6;
+
+    /** index of the longitude field */
+    static final int LONGITUDE = 7;
+
+    /** number of leading fields whose position is recorded */
+    private static final int TRACKED = LONGITUDE + 1;
+
+    private final ByteBuffer buffer;
+
+    private final int limit;
+
+    private int position;
+
+    /** number of the current record, from 1 */
+    private int record;
+
+    /** number of fields of the current record */
+    private int fields;
+
+    /** where each tracked field starts, after its opening quote */
+    private final int[] starts = new int[TRACKED];
+
+    /** where each tracked field ends, before its closing quote */
+    private final int[] ends = new int[TRACKED];
+
+    /** whether each tracked field is quoted, so may hold doubled quotes */
+    private final boolean[] quoted = new boolean[TRACKED];
+
+    /**
+     * @param buffer the csv, read from its position to its limit
+     */
+    AirportCsvParser(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+        this.limit = buffer.limit();
+    }
+
+    /**
+     * Maps a csv file into memory.
+     *
+     * @param file the csv file, smaller than 2GB
+     * @return a parser positioned before the first record
+     * @throws IOException if the file can not be mapped
+     */
+    static AirportCsvParser map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new AirportCsvParser(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a csv stream into memory.
+     *
+     * @param in the csv, read to its end
+     * @return a parser positioned before the first record
+     * @throws IOException if the stream can not be read
+     */
+    static AirportCsvParser read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        byte[] chunk = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        return new AirportCsvParser(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return false at the end of the csv
+     * @throws IOException if a quoted field is not closed
+     */
+    boolean next() throws IOException {
+        if (position >= limit) {
+            return false;
+        }
+        record++;
+        fields = 0;
+        while (true) {
+            int start = position;
+            int end;
+            boolean isQuoted = position < limit && buffer.get(position) == '"';
+            if (isQuoted) {
+                start = ++position;
+                while (true) {
+                    if (position >= limit) {
+                        throw new IOException("unterminated quoted field in record " + record);
+                    }
+                    if (buffer.get(position++) == '"') {
+                        if (position < limit && buffer.get(position) == '"') {
+                            position++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                end = position - 1;
+                // anything between the closing quote and the delimiter is ignored
+                while (position < limit && !isDelimiter(buffer.get(position))) {
+                    position++;
+                }
+            } else {
+                while (position < limit && !isDelimiter(buffer.get(position))) {
+                    position++;
+                }
+                end = position;
+            }
+            if (fields < TRACKED) {
+                starts[fields] = start;
+                ends[fields] = end;
+                quoted[fields] = isQuoted;
+            }
+            fields++;
+
+            if (position >= limit) {
+                return true;
+            }
+            byte c = buffer.get(position++);
+            if (c == '\r' && position < limit && buffer.get(position) == '\n') {
+                position++;
+            }
+            if (c != ',') {
+                return true;
+            }
+        }
+    }
+
+    private static boolean isDelimiter(byte c) {
+        return c == ',' || c == '\n' || c == '\r';
+    }
+
+    /** @return the number of the current record, from 1 */
+    int record() {
+        return record;
+    }
+
+    /** @return the number of fields of the current record */
+    int fields() {
+        return fields;
+    }
+
+    /**
+     * @param field the field index, at most {@link #LONGITUDE}
+     * @return true if the field of the current record is missing or empty
+     */
+    boolean isEmpty(int field) {
+        return field >= fields || starts[field] == ends[field];
+    }
+
+    /**
+     * Appends a field of the current record, unquoted.
+     *
+     * @param field the field index, at most {@link #LONGITUDE}
+     * @param sb where to append the field
+     * @return sb
+     */
+    StringBuilder append(int field, StringBuilder sb) {
+        if (field >= fields) {
+            return sb;
+        }
+        int start = starts[field];
+        int end = ends[field];
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                // not ascii, decode the whole field
+                return sb.append(decode(start, end, quoted[field]));
+            }
+        }
+        for (int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+            sb.append((char) c);
+            if (c == '"' && quoted[field]) {
+                i++;
+            }
+        }
+        return sb;
+    }
+
+    /**
+     * @param field the field index, at most {@link #LONGITUDE}
+     * @return a field of the current record, unquoted
+     */
+    String field(int field) {
+        return append(field, new StringBuilder(16)).toString();
+    }
+
+    private String decode(int start, int end, boolean isQuoted) {
+        byte[] bytes = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            bytes[length++] = buffer.get(i);
+            if (isQuoted && buffer.get(i) == '"') {
+                i++;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Converts a numeric field of the current record. Plain decimals such as coordinates are converted without
+     * allocating, other numbers fall back to {@link Double#parseDouble(String)}.
+     *
+     * @param field the field index, at most {@link #LONGITUDE}
+     * @return the field's value
+     * @throws NumberFormatException if the field is missing or not a number
+     */
+    double number(int field) {
+        if (isEmpty(field)) {
+            throw new NumberFormatException("record " + record + " has no field " + field);
+        }
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = buffer.get(i) == '-';
+        if (negative || buffer.get(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        boolean simple = i < end;
+        for (; i < end && simple; i++) {
+            byte c = buffer.get(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && digits > 0 && digits <= 15 && fractionDigits < DataPointParser.POWERS_OF_TEN.length) {
+            // both operands are exact, so the quotient is the correctly rounded value parseDouble would return
+            double value = mantissa / DataPointParser.POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(field(field).trim());
+    }
+}
@@ -18,7 +18,13 @@ public class AirportData {
 
     /** longitude value in degrees */
     private double longitude;
-    
+
+    /** where {@link ColumnarAtmosphericStore} keeps this airport's readings, -1 until it is added there */
+    transient int slot = -1;
+
+    /** the unit vector of the location, see {@link GreatCircle}, kept up to date by the setters */
+    transient double x = 1, y, z;
+
     public AirportData() { }
 
     public String getIata() {
@@ -35,6 +41,7 @@ public class AirportData {
 
     public void setLatitude(double latitude) {
         this.latitude = latitude;
+        locate();
     }
 
     public double getLongitude() {
@@ -43,6 +50,15 @@ public class AirportData {
 
     public void setLongitude(double longitude) {
         this.longitude = longitude;
+        locate();
+    }
+
+    private void locate() {
+        double[] xyz = new double[3];
+        GreatCircle.unitVector(latitude, longitude, xyz, 0);
+        x = xyz[0];
+        y = xyz[1];
+        z = xyz[2];
     }
 
     public String toString() {
@@ -56,4 +72,8 @@ public class AirportData {
 
         return false;
     }
+
+    public int hashCode() {
+        return iata == null ? 0 : iata.hashCode();
+    }
 }
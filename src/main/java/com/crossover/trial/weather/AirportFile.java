@@ -0,0 +1,144 @@
+package com.crossover.trial.weather;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads airport files for loading straight into {@link AirportService}, without going through the collect end
+ * point. Two formats are read: the airports.dat csv format read by {@link AirportCsvParser}, and a compact binary
+ * snapshot written by {@link #writeSnapshot(List, OutputStream)}, which starts with {@link #MAGIC}.
+ *
+ * The snapshot holds the number of airports followed by each airport's iata code, as written by
+ * {@link DataOutputStream#writeUTF(String)}, latitude and longitude. Running main converts a csv file to a snapshot.
+ *
+ * @author daniel
+ *
+ */
+public class AirportFile {
+
+    /** first bytes of a snapshot, "WAP" and the format version 1 */
+    static final int MAGIC = 0x57415001;
+
+    private AirportFile() {
+    }
+
+    /**
+     * Reads the airports of a csv file or snapshot, telling them apart by the snapshot's first bytes. Csv records
+     * missing fields, or with a latitude or longitude which is not a number, are returned without a iata code or
+     * location for {@link AirportService#newAirports(List)} to report as malformed.
+     *
+     * @param file the airports file
+     * @return the airports, in file order
+     * @throws IOException if the file can not be read or is not well formed
+     */
+    public static List<AirportData> read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() >= 4 && buffer.getInt(0) == MAGIC) {
+            return readSnapshot(buffer);
+        }
+        return readCsv(new AirportCsvParser(buffer));
+    }
+
+    private static List<AirportData> readCsv(AirportCsvParser parser) throws IOException {
+        List<AirportData> airports = new ArrayList<>();
+        while (parser.next()) {
+            if (parser.fields() == 1 && parser.isEmpty(0)) {
+                continue;
+            }
+            AirportData ad = new AirportData();
+            ad.setLatitude(Double.NaN);
+            ad.setLongitude(Double.NaN);
+            if (parser.fields() > AirportCsvParser.LONGITUDE) {
+                ad.setIata(parser.field(AirportCsvParser.IATA));
+                try {
+                    ad.setLatitude(parser.number(AirportCsvParser.LATITUDE));
+                    ad.setLongitude(parser.number(AirportCsvParser.LONGITUDE));
+                } catch (NumberFormatException e) {
+                    // reported as malformed
+                }
+            }
+            airports.add(ad);
+        }
+        return airports;
+    }
+
+    private static List<AirportData> readSnapshot(ByteBuffer buffer) throws IOException {
+        try {
+            buffer.position(4);
+            int count = buffer.getInt();
+            List<AirportData> airports = new ArrayList<>(count);
+            byte[] iata = new byte[16];
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getShort() & 0xffff;
+                if (length > iata.length) {
+                    iata = new byte[length];
+                }
+                buffer.get(iata, 0, length);
+                AirportData ad = new AirportData();
+                ad.setIata(new String(iata, 0, length, StandardCharsets.UTF_8));
+                ad.setLatitude(buffer.getDouble());
+                ad.setLongitude(buffer.getDouble());
+                airports.add(ad);
+            }
+            return airports;
+        } catch (RuntimeException e) {
+            throw new IOException("truncated airport snapshot", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of airports.
+     *
+     * @param airports the airports, with their iata code set
+     * @param out where to write the snapshot, left open
+     * @throws IOException if the snapshot can not be written
+     */
+    public static void writeSnapshot(List<AirportData> airports, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(airports.size());
+        for (AirportData ad : airports) {
+            // writeUTF uses a modified UTF-8 which only differs for NUL and supplementary characters
+            data.writeUTF(ad.getIata());
+            data.writeDouble(ad.getLatitude());
+            data.writeDouble(ad.getLongitude());
+        }
+        data.flush();
+    }
+
+    /**
+     * Converts an airports csv file to a snapshot, keeping only the well formed records.
+     * @param args the csv file and the snapshot file
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: AirportFile <airports.dat> <snapshot>");
+            System.exit(1);
+        }
+        List<AirportData> airports = new ArrayList<>();
+        for (AirportData ad : read(Paths.get(args[0]))) {
+            if (ad.getIata() != null && !Double.isNaN(ad.getLatitude()) && !Double.isNaN(ad.getLongitude())) {
+                airports.add(ad);
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+            writeSnapshot(airports, out);
+        }
+        System.out.println("wrote " + airports.size() + " airports to " + args[1]);
+    }
+}
@@ -0,0 +1,280 @@
+package com.crossover.trial.weather;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * A spatial index over the known airports: a fixed grid of one degree latitude/longitude cells. Radius
+ * queries only visit the cells intersecting the bounding box of the query circle before running the exact
+ * distance check, instead of measuring the distance to every known airport.
+ *
+ * Each cell holds immutable arrays which writers replace as a whole, so queries never take a lock: the airports,
+ * and their unit vectors packed in a double array for {@link GreatCircle#within}, so the exact check reads
+ * consecutive primitives and needs no trigonometry.
+ */
+class AirportGrid {
+
+    /** number of one degree latitude bands, from -90 to 90 */
+    private static final int LAT_CELLS = 180;
+
+    /** number of one degree longitude bands, from -180 to 180 */
+    private static final int LON_CELLS = 360;
+
+    private static final Cell EMPTY = new Cell(new AirportData[0]);
+
+    /** airports in each cell, indexed by latitude band * LON_CELLS + longitude band */
+    private final AtomicReferenceArray<Cell> cells = new AtomicReferenceArray<>(LAT_CELLS * LON_CELLS);
+
+    /** the airports of a cell and their unit vectors, 3 doubles each */
+    private static final class Cell {
+
+        final AirportData[] airports;
+
+        final double[] xyz;
+
+        Cell(AirportData[] airports) {
+            this.airports = airports;
+            this.xyz = new double[airports.length * 3];
+            for (int i = 0; i < airports.length; i++) {
+                xyz[3 * i] = airports[i].x;
+                xyz[3 * i + 1] = airports[i].y;
+                xyz[3 * i + 2] = airports[i].z;
+            }
+        }
+    }
+
+    AirportGrid() {
+        clear();
+    }
+
+    /**
+     * Adds an airport to the cell covering its location.
+     *
+     * @param ad the airport to index
+     */
+    synchronized void add(AirportData ad) {
+        int cell = cellOf(ad.getLatitude(), ad.getLongitude());
+        AirportData[] current = cells.get(cell).airports;
+        AirportData[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = ad;
+        cells.set(cell, new Cell(updated));
+    }
+
+    /**
+     * Adds many airports, copying each affected cell once instead of once per airport.
+     *
+     * @param airports the airports to index
+     */
+    synchronized void addAll(List<AirportData> airports) {
+        Map<Integer, List<AirportData>> byCell = new HashMap<>();
+        for (AirportData ad : airports) {
+            byCell.computeIfAbsent(cellOf(ad.getLatitude(), ad.getLongitude()), k -> new ArrayList<>()).add(ad);
+        }
+        for (Map.Entry<Integer, List<AirportData>> e : byCell.entrySet()) {
+            AirportData[] current = cells.get(e.getKey()).airports;
+            AirportData[] updated = Arrays.copyOf(current, current.length + e.getValue().size());
+            for (int i = 0; i < e.getValue().size(); i++) {
+                updated[current.length + i] = e.getValue().get(i);
+            }
+            cells.set(e.getKey(), new Cell(updated));
+        }
+    }
+
+    /**
+     * Removes an airport from the cell covering its location.
+     *
+     * @param ad the airport to remove, as it was added
+     */
+    synchronized void remove(AirportData ad) {
+        int cell = cellOf(ad.getLatitude(), ad.getLongitude());
+        AirportData[] current = cells.get(cell).airports;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == ad) {
+                AirportData[] updated = new AirportData[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                cells.set(cell, new Cell(updated));
+                return;
+            }
+        }
+    }
+
+    /** Removes all airports. */
+    synchronized void clear() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * Finds all indexed airports whose great circle distance to the center is at most the given radius,
+     * the center included.
+     *
+     * @param center the airport to measure from
+     * @param radius the radius in km
+     * @return the matching airports, in no particular order
+     */
+    List<AirportData> withinRadius(AirportData center, double radius) {
+        List<AirportData> retval = new ArrayList<>();
+        if (radius < 0) {
+            return retval;
+        }
+
+        // angular radius of the query circle, in degrees
+        double delta = Math.toDegrees(radius / AirportService.R);
+        double minLat = center.getLatitude() - delta;
+        double maxLat = center.getLatitude() + delta;
+
+        int firstLon = 0;
+        int lonCount = LON_CELLS;
+        if (minLat > -90 && maxLat < 90) {
+            // the circle does not cover a pole, so its longitude span is bounded
+            double s = Math.sin(Math.toRadians(delta)) / Math.cos(Math.toRadians(center.getLatitude()));
+            if (s < 1) {
+                double deltaLon = Math.toDegrees(Math.asin(s));
+                int west = lonBand(center.getLongitude() - deltaLon);
+                int east = lonBand(center.getLongitude() + deltaLon);
+                if (east - west + 1 < LON_CELLS) {
+                    firstLon = west;
+                    lonCount = east - west + 1;
+                }
+            }
+        }
+
+        double maxChord2 = GreatCircle.maxChord2(radius);
+        int[] selected = new int[16];
+        int lastLat = latBand(maxLat);
+        for (int lat = latBand(minLat); lat <= lastLat; lat++) {
+            for (int i = 0; i < lonCount; i++) {
+                Cell cell = cells.get(lat * LON_CELLS + Math.floorMod(firstLon + i, LON_CELLS));
+                if (cell.airports.length > selected.length) {
+                    selected = new int[cell.airports.length];
+                }
+                int n = GreatCircle.within(cell.xyz, cell.airports.length, center.x, center.y, center.z,
+                        maxChord2, selected);
+                for (int j = 0; j < n; j++) {
+                    retval.add(cell.airports[selected[j]]);
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Finds the k indexed airports nearest to the center which pass a filter, the center included, with a best-first
+     * search: cells and airports are visited from a queue ordered by distance, a cell by a lower bound of the
+     * distance to any point in it. A cell's airports are queued when it is visited, along with its neighbours, so
+     * only the cells closer than the k-th airport found are visited.
+     *
+     * @param center the airport to measure from
+     * @param k the number of airports to find
+     * @param filter which airports to return
+     * @return up to k airports with their distance in km, nearest first
+     */
+    List<Map.Entry<AirportData, Double>> nearest(AirportData center, int k, Predicate<AirportData> filter) {
+        List<Map.Entry<AirportData, Double>> retval = new ArrayList<>(Math.min(k, 64));
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        BitSet queued = new BitSet(LAT_CELLS * LON_CELLS);
+        int start = cellOf(center.getLatitude(), center.getLongitude());
+        queued.set(start);
+        queue.add(new Candidate(0, start, null));
+        while (retval.size() < k && !queue.isEmpty()) {
+            Candidate candidate = queue.poll();
+            if (candidate.airport != null) {
+                if (filter.test(candidate.airport)) {
+                    retval.add(new AbstractMap.SimpleImmutableEntry<>(candidate.airport, candidate.distance));
+                }
+                continue;
+            }
+            Cell cell = cells.get(candidate.cell);
+            for (int i = 0; i < cell.airports.length; i++) {
+                double distance = GreatCircle.distance(cell.xyz[3 * i], cell.xyz[3 * i + 1], cell.xyz[3 * i + 2],
+                        center.x, center.y, center.z);
+                queue.add(new Candidate(distance, -1, cell.airports[i]));
+            }
+            int lat = candidate.cell / LON_CELLS;
+            int lon = candidate.cell % LON_CELLS;
+            for (int dLat = -1; dLat <= 1; dLat++) {
+                for (int dLon = -1; dLon <= 1; dLon++) {
+                    if (lat + dLat < 0 || lat + dLat >= LAT_CELLS) {
+                        continue;
+                    }
+                    int neighbour = (lat + dLat) * LON_CELLS + Math.floorMod(lon + dLon, LON_CELLS);
+                    if (!queued.get(neighbour)) {
+                        queued.set(neighbour);
+                        queue.add(new Candidate(minDistance(center, lat + dLat, Math.floorMod(lon + dLon, LON_CELLS)),
+                                neighbour, null));
+                    }
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * A lower bound of the haversine distance from the center to any point of a cell, in km: the larger of the
+     * latitude gap, and of the distance to the nearest point of the nearest meridian bounding the cell.
+     */
+    private static double minDistance(AirportData center, int latBand, int lonBand) {
+        double lat = center.getLatitude();
+        double south = latBand - 90;
+        double latGap = lat < south ? south - lat : Math.max(0, lat - (south + 1));
+        double west = lonBand - 180;
+        // how far east of the western meridian the center is, from -180 to 180 degrees
+        double offset = Math.IEEEremainder(center.getLongitude() - west, 360);
+        double lonGap = offset >= 0 && offset <= 1
+                ? 0 : Math.min(Math.abs(offset), Math.abs(Math.IEEEremainder(offset - 1, 360)));
+        double meridianGap;
+        if (lonGap >= 90) {
+            // the nearest point of a meridian this far is a pole
+            meridianGap = 90 - Math.abs(lat);
+        } else {
+            meridianGap = Math.toDegrees(Math.asin(Math.cos(Math.toRadians(lat)) * Math.sin(Math.toRadians(lonGap))));
+        }
+        // slightly less, so rounding never puts a cell after an airport it holds
+        return Math.max(0, Math.toRadians(Math.max(latGap, meridianGap)) * AirportService.R - 1e-6);
+    }
+
+    /** a cell, or an airport, queued by its distance */
+    private static final class Candidate implements Comparable<Candidate> {
+
+        final double distance;
+
+        final int cell;
+
+        final AirportData airport;
+
+        Candidate(double distance, int cell, AirportData airport) {
+            this.distance = distance;
+            this.cell = cell;
+            this.airport = airport;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+
+    private static int cellOf(double latitude, double longitude) {
+        return latBand(latitude) * LON_CELLS + Math.floorMod(lonBand(longitude), LON_CELLS);
+    }
+
+    /** the latitude band of the given latitude, clamped to the valid range */
+    private static int latBand(double latitude) {
+        return Math.max(0, Math.min(LAT_CELLS - 1, (int) Math.floor(latitude + 90)));
+    }
+
+    /** the longitude band of the given longitude, not wrapped around the antimeridian */
+    private static int lonBand(double longitude) {
+        return (int) Math.floor(longitude + 180);
+    }
+}
@@ -1,51 +1,282 @@
 package com.crossover.trial.weather;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 /**
- * A simple airport loader which reads a file from disk and sends entries to the webservice
+ * A simple airport loader which reads a file from disk and sends entries to the webservice.
+ *
+ * Lines are parsed with {@link AirportCsvParser} on the calling thread while the airports are sent with the
+ * asynchronous client, at most {@link #concurrency} requests at a time. By default airports are sent in chunks of
+ * {@link #chunkSize} to the bulk registration end point, a chunk size of 0 sends one request per airport instead. A
+ * request failing with an I/O error or answered 503 Service Unavailable is sent again, up to {@link #retries} times;
+ * other errors would fail again. Each retry waits an exponential backoff starting at {@link #backoffMillis}, with
+ * a random half of it as jitter so requests failed together are not sent again together. Airports the service already knows are counted as duplicates rather than failures,
+ * so an airport registered by a request whose response was lost is not reported as failed when it is sent again.
+ * Records without a longitude field are counted as failed.
  *
- * TODO: Implement the Airport Loader
- * 
  * @author code test administrator
  */
-public class AirportLoader {
+public class AirportLoader implements Closeable {
+
+    /** base uri of the weather service */
+    private static final String BASE_URI = "http://localhost:9090";
+
+    /** number of requests in flight by default */
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    /** number of times a failed request is sent again by default */
+    public static final int DEFAULT_RETRIES = 3;
+
+    /** number of airports sent in one request by default */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /** wait before the first retry by default, in milliseconds, doubled for each further retry */
+    public static final long DEFAULT_BACKOFF = 100;
+
+    /** longest wait before a retry, in milliseconds */
+    private static final long MAX_BACKOFF = 10000;
+
+    private final Client client;
 
     /** end point to supply updates */
     private WebTarget collect;
 
+    /** sends the retries once their backoff has passed */
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "airport-loader-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** maximum number of requests in flight */
+    private final int concurrency;
+
+    /** number of times a failed request is sent again */
+    private final int retries;
+
+    /** number of airports sent in one request, or 0 to use the single airport end point */
+    private final int chunkSize;
+
+    /** wait before the first retry, in milliseconds */
+    private final long backoffMillis;
+
+    /**
+     * Creates a loader for the local weather service. The concurrency, retries, chunk size and backoff are read
+     * from the loader.concurrency, loader.retries, loader.chunk and loader.backoff system properties.
+     */
     public AirportLoader() {
-        Client client = ClientBuilder.newClient();
-        collect = client.target("http://localhost:9090/collect");
+        this(BASE_URI, Integer.getInteger("loader.concurrency", DEFAULT_CONCURRENCY),
+                Integer.getInteger("loader.retries", DEFAULT_RETRIES),
+                Integer.getInteger("loader.chunk", DEFAULT_CHUNK_SIZE),
+                Long.getLong("loader.backoff", DEFAULT_BACKOFF));
+    }
+
+    /**
+     * @param baseUri base uri of the weather service
+     * @param concurrency maximum number of requests in flight, at least 1
+     * @param retries number of times a failed request is sent again
+     * @param chunkSize number of airports sent in one request, or 0 to send one request per airport
+     */
+    public AirportLoader(String baseUri, int concurrency, int retries, int chunkSize) {
+        this(baseUri, concurrency, retries, chunkSize, DEFAULT_BACKOFF);
     }
 
     /**
-     * Reads airport input stream, and creates an airport for each line present in stream.
+     * @param baseUri base uri of the weather service
+     * @param concurrency maximum number of requests in flight, at least 1
+     * @param retries number of times a failed request is sent again
+     * @param chunkSize number of airports sent in one request, or 0 to send one request per airport
+     * @param backoffMillis wait before the first retry, in milliseconds, doubled for each further retry
+     */
+    public AirportLoader(String baseUri, int concurrency, int retries, int chunkSize, long backoffMillis) {
+        if (concurrency < 1 || retries < 0 || chunkSize < 0 || backoffMillis < 0) {
+            throw new IllegalArgumentException("invalid concurrency " + concurrency + ", retries " + retries
+                    + ", chunk size " + chunkSize + " or backoff " + backoffMillis);
+        }
+        client = ClientBuilder.newClient();
+        collect = client.target(baseUri + "/collect");
+        this.concurrency = concurrency;
+        this.retries = retries;
+        this.chunkSize = chunkSize;
+        this.backoffMillis = backoffMillis;
+    }
+
+    /**
+     * Reads airport input stream, and creates an airport for each line present in stream. Returns once every
+     * airport has been sent.
      * @param airportDataStream the airport input stream
+     * @return counts of the airports sent
+     * @throws IOException
+     */
+    public Report upload(InputStream airportDataStream) throws IOException{
+        return upload(AirportCsvParser.read(airportDataStream));
+    }
+
+    /**
+     * Maps airport file into memory, and creates an airport for each line present in file. Returns once every
+     * airport has been sent.
+     * @param airportDataFile the airport file
+     * @return counts of the airports sent
      * @throws IOException
      */
-    public void upload(InputStream airportDataStream) throws IOException{
-        BufferedReader reader = new BufferedReader(new InputStreamReader(airportDataStream));
-        String l = null;
-
-        while ((l = reader.readLine()) != null) {
-        	String[] fields = l.split(",");
-        	String path = "/airport/" + AirportLoader.removeQuoationMarks(fields[4]) 
-        		+ "/" + fields[6] + "/" + fields[7];
-        	WebTarget target = collect.path(path);
-        	target.request().post(null);
+    public Report upload(File airportDataFile) throws IOException{
+        return upload(AirportCsvParser.map(airportDataFile.toPath()));
+    }
+
+    private Report upload(AirportCsvParser parser) throws IOException{
+        Semaphore window = new Semaphore(concurrency);
+        Report report = new Report();
+        StringBuilder chunk = new StringBuilder();
+        int chunked = 0;
+
+        try {
+            while (parser.next()) {
+            	if (parser.fields() <= AirportCsvParser.LONGITUDE) {
+            		// blank lines are skipped, short records can not be sent
+            		if (parser.fields() > 1 || !parser.isEmpty(0)) {
+            			report.failed.incrementAndGet();
+            		}
+            		continue;
+            	}
+            	if (chunkSize == 0) {
+            		StringBuilder path = new StringBuilder("/airport/");
+            		parser.append(AirportCsvParser.IATA, path).append('/');
+            		parser.append(AirportCsvParser.LATITUDE, path).append('/');
+            		parser.append(AirportCsvParser.LONGITUDE, path);
+            		window.acquire();
+            		post(collect.path(path.toString()), null, 1, 0, window, report);
+            		continue;
+            	}
+            	parser.append(AirportCsvParser.IATA, chunk).append(',');
+            	parser.append(AirportCsvParser.LATITUDE, chunk).append(',');
+            	parser.append(AirportCsvParser.LONGITUDE, chunk).append('\n');
+            	if (++chunked == chunkSize) {
+            		window.acquire();
+            		postChunk(chunk, chunked, window, report);
+            		chunk.setLength(0);
+            		chunked = 0;
+            	}
+            }
+            if (chunked > 0) {
+            	window.acquire();
+            	postChunk(chunk, chunked, window, report);
+            }
+            // every request has completed once all permits are back
+            window.acquire(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while uploading airports");
         }
+        report.finish();
+        return report;
     }
-    
+
+    /**
+     * Sends a chunk of iata,latitude,longitude lines to the bulk registration end point.
+     */
+    private void postChunk(StringBuilder chunk, int airports, Semaphore window, Report report) {
+        post(collect.path("/airports"), Entity.entity(chunk.toString(), WeatherCollectorEndpoint.TEXT_CSV), airports,
+                0, window, report);
+    }
+
+    /**
+     * Sends airports asynchronously, and sends them again on failure while retries are left. The window permit held
+     * for the request is released once it is done.
+     *
+     * @param entity the bulk registration body, or null for a single airport request
+     * @param airports the number of airports sent
+     */
+    private void post(WebTarget target, Entity<String> entity, int airports, int attempt, Semaphore window,
+                      Report report) {
+        target.request(MediaType.APPLICATION_JSON).async().post(entity, new InvocationCallback<Response>() {
+            @Override
+            public void completed(Response response) {
+                try {
+                    int status = response.getStatus();
+                    if (status < 400) {
+                        if (entity == null) {
+                            done(1, 0, 0);
+                        } else {
+                            int added = 0;
+                            int duplicates = 0;
+                            String statuses = response.readEntity(String.class);
+                            for (AirportStatus airportStatus : AirportService.gson.fromJson(statuses,
+                                    AirportStatus[].class)) {
+                                if (airportStatus == AirportStatus.OK) {
+                                    added++;
+                                } else if (airportStatus == AirportStatus.DUPLICATE) {
+                                    duplicates++;
+                                }
+                            }
+                            done(added, duplicates, airports - added - duplicates);
+                        }
+                    } else if (status == Response.Status.CONFLICT.getStatusCode()) {
+                        done(0, airports, 0);
+                    } else if (status == Response.Status.SERVICE_UNAVAILABLE.getStatusCode() && attempt < retries) {
+                        retry();
+                    } else {
+                        done(0, 0, airports);
+                    }
+                } catch (RuntimeException e) {
+                    done(0, 0, airports);
+                } finally {
+                    response.close();
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                if (attempt < retries) {
+                    retry();
+                } else {
+                    done(0, 0, airports);
+                }
+            }
+
+            private void retry() {
+                report.retried.incrementAndGet();
+                long backoff = Math.min(MAX_BACKOFF, backoffMillis << Math.min(attempt, 20));
+                long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                retryScheduler.schedule(() -> post(target, entity, airports, attempt + 1, window, report), delay,
+                        TimeUnit.MILLISECONDS);
+            }
+
+            private void done(int sent, int duplicates, int failed) {
+                report.sent.addAndGet(sent);
+                report.duplicates.addAndGet(duplicates);
+                report.failed.addAndGet(failed);
+                window.release();
+            }
+        });
+    }
+
+    /**
+     * Stops sending retries and closes the client. To be called once every upload has returned.
+     */
+    @Override
+    public void close() {
+        retryScheduler.shutdownNow();
+        client.close();
+    }
+
     /**
      * Removes surrounding quotation marks of input string.
      * @param s The input string
@@ -68,10 +299,65 @@ public class AirportLoader {
             System.exit(1);
         }
 
-        AirportLoader al = new AirportLoader();
-        FileInputStream fileInputStream = new FileInputStream(airportDataFile);
-        al.upload(fileInputStream);
-        fileInputStream.close();
-        System.exit(0);
+        Report report;
+        try (AirportLoader al = new AirportLoader()) {
+            report = al.upload(airportDataFile);
+        }
+        System.out.println(report);
+        System.exit(report.getFailed() == 0 ? 0 : 2);
+    }
+
+    /**
+     * Outcome of an upload.
+     */
+    public static class Report {
+
+        private final long start = System.nanoTime();
+
+        private long elapsed;
+
+        /** airports the service accepted */
+        private final AtomicInteger sent = new AtomicInteger();
+
+        /** airports the service already knew */
+        private final AtomicInteger duplicates = new AtomicInteger();
+
+        /** airports the service rejected as malformed, or could not be sent after all retries */
+        private final AtomicInteger failed = new AtomicInteger();
+
+        /** requests sent again, a chunk counting once */
+        private final AtomicInteger retried = new AtomicInteger();
+
+        private void finish() {
+            elapsed = System.nanoTime() - start;
+        }
+
+        public int getSent() {
+            return sent.get();
+        }
+
+        public int getDuplicates() {
+            return duplicates.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public int getRetried() {
+            return retried.get();
+        }
+
+        /** @return the duration of the upload in milliseconds */
+        public long getElapsedMillis() {
+            return elapsed / 1000000;
+        }
+
+        public String toString() {
+            double seconds = Math.max(elapsed, 1) / 1e9;
+            return String.format("sent %d airports, %d duplicates, %d failed, %d retries in %.2f s (%.0f airports/s)",
+                    getSent(), getDuplicates(), getFailed(), getRetried(), seconds,
+                    (getSent() + getDuplicates() + getFailed()) / seconds);
+        }
     }
 }
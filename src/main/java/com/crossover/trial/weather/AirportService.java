@@ -1,10 +1,16 @@
 package com.crossover.trial.weather;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.gson.Gson;
 /**
@@ -21,24 +27,70 @@ public class AirportService {
     /** shared gson json to object factory */
     public static final Gson gson = new Gson();
 
-    /** all known airports */
-    public volatile static List<AirportData> airportData = new ArrayList<>();
+    /**
+     * longest iata code accepted, in characters: room for iata and icao codes and generated test codes, and far
+     * below what a write ahead log record or a snapshot can hold
+     */
+    public static final int MAX_IATA_LENGTH = 8;
+
+    /** all known airports, in registration order. Iteration never blocks and sees a stable snapshot */
+    public volatile static List<AirportData> airportData = new CopyOnWriteArrayList<>();
+
+    /** all known airports indexed by iata code, kept consistent with {@link #airportData} */
+    private static final Map<String, AirportData> airportIndex = new ConcurrentHashMap<>();
+
+    /** all known airports indexed by location, kept consistent with {@link #airportData} */
+    private static final AirportGrid airportGrid = new AirportGrid();
+
+    /**
+     * taken to add and delete airports, so the airport list and indexes change together. Time waited for it is
+     * recorded in {@link WeatherMetrics#registryLockWaits}
+     */
+    private static final ReentrantLock registryLock = new ReentrantLock();
 
-    /** atmospheric information for each airport, idx corresponds with airportData */
-    public volatile static Map<String,AtmosphericInformation> atmosphericInformation = new HashMap<>();
+    /**
+     * latest readings of each known airport, kept consistent with {@link #airportData}. The weather.storage system
+     * property chooses the engine, "snapshot" by default or "columnar", see {@link AtmosphericStore}
+     */
+    private static final AtmosphericStore atmosphericInformation =
+            AtmosphericStore.create(System.getProperty("weather.storage", "snapshot"));
+
+    /**
+     * recent data points of each airport and point type. The weather.history.size, weather.history.retention and
+     * weather.history.memory system properties set the entries kept per airport and point type, for how many
+     * milliseconds, and the memory all entries may take in bytes
+     */
+    private static final ReadingHistory history = new ReadingHistory(
+            Integer.getInteger("weather.history.size", ReadingHistory.DEFAULT_SIZE),
+            Long.getLong("weather.history.retention", ReadingHistory.DEFAULT_RETENTION),
+            Long.getLong("weather.history.memory", ReadingHistory.DEFAULT_BUDGET));
+
+    /** how long a reading counts as recent, in milliseconds */
+    public static final long RECENT_UPDATE_WINDOW = 86400000;
+
+    /** number of airports with readings updated recently, maintained as updates happen */
+    private static final UpdateWindow recentUpdates = new UpdateWindow(RECENT_UPDATE_WINDOW);
 
     /**
      * Internal performance counter to better understand most requested information, this map can be improved but
      * for now provides the basis for future performance optimizations. Due to the stateless deployment architecture
      * we don't want to write this to disk, but will pull it off using a REST request and aggregate with other
-     * performance metrics {@link #ping()}
+     * performance metrics {@link #ping()}. Counts the queries for each known airport, by iata code.
      */
-    public volatile static Map<AirportData, Integer> requestFrequency = new HashMap<AirportData, Integer>();
+    public static final Map<String, LongAdder> requestFrequency = new ConcurrentHashMap<>();
+
+    /** Total number of queries, including those for unknown airports. */
+    public static final LongAdder totalRequests = new LongAdder();
 
     /**
-     * Radio request frequency map.
+     * Radio request frequency histogram. Radii from the maximum set by the weather.radius.max system property,
+     * 1000 km by default, share one overflow bucket.
      */
-    public volatile static Map<Double, Integer> radiusFreq = new HashMap<Double, Integer>();
+    public static final RadiusHistogram radiusFreq =
+            new RadiusHistogram(Integer.getInteger("weather.radius.max", RadiusHistogram.DEFAULT_MAX_RADIUS));
+
+    /** log of the mutations since the last snapshot, null unless enabled, see {@link WriteAheadLog} */
+    private static volatile WriteAheadLog log;
 
     /**
      * Singleton instance of service class.
@@ -66,12 +118,97 @@ public class AirportService {
      * @param iataCode as a string
      * @return airport data or null if not found
      */
-    public synchronized static AirportData findAirportData(String iataCode) {
-        return Collections.synchronizedList(airportData).stream()
-            .filter(ap -> ap.getIata().equals(iataCode))
-            .findFirst().orElse(null);
+    public static AirportData findAirportData(String iataCode) {
+        return iataCode == null ? null : airportIndex.get(iataCode);
+    }
+
+    /**
+     * Find all airports within the given radius of an airport, the airport itself included.
+     *
+     * @param center the airport to measure from
+     * @param radius the radius in km
+     * @return the airports within radius, in no particular order
+     */
+    public static List<AirportData> findAirportsWithinRadius(AirportData center, double radius) {
+        return airportGrid.withinRadius(center, radius);
     }
     
+    /**
+     * @param ad a known airport
+     * @return the airport's readings, or null if it has been deleted meanwhile
+     */
+    static AtmosphericInformation findAtmosphericInformation(AirportData ad) {
+        return atmosphericInformation.get(ad);
+    }
+
+    /**
+     * Find the airports nearest to an airport, the airport itself included, optionally only those with a reading of
+     * a given type or updated recently.
+     *
+     * @param center the airport to measure from
+     * @param k the number of airports to find
+     * @param pointType the type of reading the airports must have, or null for any airport
+     * @param maxAgeMillis how recently the airports must have been updated in milliseconds, or 0 for any airport
+     * @return up to k airports, nearest first
+     */
+    public static List<NearbyAirport> findNearestAirports(AirportData center, int k, DataPointType pointType,
+                                                          long maxAgeMillis) {
+        long oldest = System.currentTimeMillis() - maxAgeMillis;
+        Map<AirportData, AtmosphericInformation> passed = new HashMap<>();
+        List<NearbyAirport> retval = new ArrayList<>();
+        for (Map.Entry<AirportData, Double> e : airportGrid.nearest(center, k, ad -> {
+            AtmosphericInformation ai = atmosphericInformation.get(ad);
+            if (ai == null || (pointType != null && ai.get(pointType) == null)
+                    || (maxAgeMillis > 0 && ai.getLastUpdateTime() < oldest)) {
+                return false;
+            }
+            passed.put(ad, ai);
+            return true;
+        })) {
+            retval.add(new NearbyAirport(e.getKey().getIata(), e.getValue(), passed.get(e.getKey())));
+        }
+        return retval;
+    }
+
+    /**
+     * Aggregates the readings of all airports within the given radius of an airport, the airport itself included,
+     * in a single pass over the airports found.
+     *
+     * @param center the airport to measure from
+     * @param radius the radius in km
+     * @param percentile the percentile of the quartiles to report, from 0 to 100
+     * @return the aggregate of each point type read at one airport at least, keyed by lower case point type name
+     */
+    public static Map<String, AggregateDataPoint> aggregateWithinRadius(AirportData center, double radius,
+                                                                        double percentile) {
+        List<AirportData> airports = radius == 0
+                ? Collections.singletonList(center) : findAirportsWithinRadius(center, radius);
+        DataPointAggregator aggregator = new DataPointAggregator(airports.size());
+        for (AirportData ad : airports) {
+            AtmosphericInformation ai = atmosphericInformation.get(ad);
+            if (ai != null) {
+                aggregator.add(ai);
+            }
+        }
+        return aggregator.result(percentile);
+    }
+
+    /**
+     * Find the data points of one type collected at an airport over a time range, within the retention period of
+     * the history.
+     *
+     * @param iataCode the 3 letter IATA code
+     * @param pointType the point type
+     * @param from the start of the range, inclusive, in milliseconds since UTC epoch
+     * @param to the end of the range, inclusive, in milliseconds since UTC epoch
+     * @param maxPoints the most data points to return, longer ranges are downsampled
+     * @return the data points, oldest first
+     */
+    public static List<TimedDataPoint> findHistory(String iataCode, DataPointType pointType, long from, long to,
+                                                   int maxPoints) {
+        return history.query(iataCode, pointType, from, to, maxPoints, System.currentTimeMillis());
+    }
+
     /**
      * Update the airports weather data with the collected data.
      *
@@ -84,78 +221,178 @@ public class AirportService {
     public static void addDataPoint(String iataCode, String pointType, DataPoint dp) throws WeatherException {
         AirportData airportData = findAirportData(iataCode);
         if (airportData != null)
-        	updateAtmosphericInformation(Collections.synchronizedMap(atmosphericInformation).get(airportData.getIata()), pointType, dp);
+        	updateAtmosphericInformation(airportData.getIata(), pointType, dp);
+        else
+        	WeatherMetrics.rejected(DataPointType.parse(pointType), UpdateStatus.UNKNOWN_AIRPORT);
     }
 
     /**
-     * update atmospheric information with the given data point for the given point type
+     * update atmospheric information with the given data point for the given point type. Updates to the same
+     * airport are applied one at a time, updates to different airports never wait for each other.
      *
-     * @param ai the atmospheric information object to update
+     * @param iataCode the 3 letter IATA code of the airport to update
      * @param pointType the data point type as a string
      * @param dp the actual data point
      */
-    public static synchronized void updateAtmosphericInformation(AtmosphericInformation ai, String pointType, DataPoint dp) throws WeatherException {
-
-        if (pointType.equalsIgnoreCase(DataPointType.WIND.name())) {
-            if (dp.getMean() >= 0) {
-                ai.setWind(dp);
-                ai.setLastUpdateTime(System.currentTimeMillis());
-                return;
-            }
+    public static void updateAtmosphericInformation(String iataCode, String pointType, DataPoint dp) throws WeatherException {
+        DataPointType type = DataPointType.parse(pointType);
+        if (type == null || !type.accepts(dp)) {
+            WeatherMetrics.rejected(type, type == null ? UpdateStatus.UNKNOWN_POINT_TYPE : UpdateStatus.OUT_OF_RANGE);
+            throw new IllegalStateException("couldn't update atmospheric data");
         }
+        update(iataCode, type, dp);
+    }
 
-        if (pointType.equalsIgnoreCase(DataPointType.TEMPERATURE.name())) {
-            if (dp.getMean() >= -50 && dp.getMean() < 100) {
-                ai.setTemperature(dp);
-                ai.setLastUpdateTime(System.currentTimeMillis());
-                return;
+    /**
+     * Update the weather data of many airports with a batch of collected data points. The data points of an airport
+     * are validated, then applied together with a single snapshot replacement, where a later data point replaces an
+     * earlier one of the same type.
+     *
+     * @param updates the collected data points
+     * @return the outcome of each data point, in the order given
+     */
+    public static List<UpdateStatus> addDataPoints(List<DataPointUpdate> updates) {
+        UpdateStatus[] statuses = new UpdateStatus[updates.size()];
+        Map<String, List<Integer>> byAirport = new LinkedHashMap<>();
+        for (int i = 0; i < updates.size(); i++) {
+            DataPointUpdate update = updates.get(i);
+            DataPointType type = DataPointType.parse(update.getPointType());
+            if (update.getIata() == null || update.getPointType() == null || update.getDataPoint() == null) {
+                statuses[i] = UpdateStatus.MALFORMED;
+            } else if (type == null) {
+                statuses[i] = UpdateStatus.UNKNOWN_POINT_TYPE;
+            } else if (!type.accepts(update.getDataPoint())) {
+                statuses[i] = UpdateStatus.OUT_OF_RANGE;
+            } else if (findAirportData(update.getIata()) == null) {
+                statuses[i] = UpdateStatus.UNKNOWN_AIRPORT;
+            } else {
+                byAirport.computeIfAbsent(update.getIata(), k -> new ArrayList<>()).add(i);
+                statuses[i] = UpdateStatus.OK;
             }
         }
 
-        if (pointType.equalsIgnoreCase(DataPointType.HUMIDITY.name())) {
-            if (dp.getMean() >= 0 && dp.getMean() <= 100) {
-                ai.setHumidity(dp);
-                ai.setLastUpdateTime(System.currentTimeMillis());
-                return;
+        for (Map.Entry<String, List<Integer>> e : byAirport.entrySet()) {
+            List<Integer> indexes = e.getValue();
+            DataPointType[] types = new DataPointType[indexes.size()];
+            DataPoint[] dps = new DataPoint[indexes.size()];
+            for (int i = 0; i < indexes.size(); i++) {
+                DataPointUpdate update = updates.get(indexes.get(i));
+                types[i] = DataPointType.parse(update.getPointType());
+                dps[i] = update.getDataPoint();
+            }
+            if (!update(e.getKey(), types, dps)) {
+                // deleted since it was looked up
+                for (int i : indexes) {
+                    statuses[i] = UpdateStatus.UNKNOWN_AIRPORT;
+                }
             }
         }
-
-        if (pointType.equalsIgnoreCase(DataPointType.PRESSURE.name())) {
-            if (dp.getMean() >= 0) {
-                ai.setPressure(dp);
-                ai.setLastUpdateTime(System.currentTimeMillis());
-                return;
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] != UpdateStatus.OK) {
+                WeatherMetrics.rejected(DataPointType.parse(updates.get(i).getPointType()), statuses[i]);
             }
         }
+        return Arrays.asList(statuses);
+    }
+
+    /**
+     * Replaces the airport's atmospheric information snapshot with a copy holding the new data point.
+     * Does nothing if the airport has been deleted meanwhile.
+     */
+    private static void update(String iataCode, DataPointType pointType, DataPoint dp) {
+        update(iataCode, new DataPointType[] {pointType}, new DataPoint[] {dp});
+    }
+
+    /**
+     * Replaces the airport's atmospheric information snapshot with a copy holding the new data points, applied in
+     * order.
+     *
+     * @return false if the airport has been deleted meanwhile
+     */
+    private static boolean update(String iataCode, DataPointType[] pointTypes, DataPoint[] dps) {
+        return update(iataCode, pointTypes, dps, System.currentTimeMillis());
+    }
+
+    /**
+     * Applies data points with the update time they were logged with, when replaying the write ahead log.
+     * Does nothing if the airport is not known.
+     */
+    static void replayDataPoint(String iataCode, DataPointType pointType, DataPoint dp, long updateTime) {
+        update(iataCode, new DataPointType[] {pointType}, new DataPoint[] {dp}, updateTime);
+    }
 
-        if (pointType.equalsIgnoreCase(DataPointType.CLOUDCOVER.name())) {
-            if (dp.getMean() >= 0 && dp.getMean() <= 100) {
-                ai.setCloudCover(dp);
-                ai.setLastUpdateTime(System.currentTimeMillis());
-                return;
+    private static boolean update(String iataCode, DataPointType[] pointTypes, DataPoint[] dps, long now) {
+        AirportData ad = findAirportData(iataCode);
+        return ad != null && atmosphericInformation.update(ad, pointTypes, dps, now, previousUpdateTime -> {
+            recentUpdates.moved(previousUpdateTime, now);
+            for (int i = 0; i < pointTypes.length; i++) {
+                history.record(iataCode, pointTypes[i], dps[i], now);
             }
-        }
+            // logged while the airport is locked, so updates to an airport are logged in the order they apply
+            WriteAheadLog l = log;
+            if (l != null) {
+                for (int i = 0; i < pointTypes.length; i++) {
+                    l.dataPoint(iataCode, pointTypes[i], dps[i], now);
+                }
+            }
+        });
+    }
 
-        if (pointType.equalsIgnoreCase(DataPointType.PRECIPITATION.name())) {
-            if (dp.getMean() >=0) {
-                ai.setPrecipitation(dp);
-                ai.setLastUpdateTime(System.currentTimeMillis());
-                return;
+    /**
+     * Stores the readings of a known airport restored from a snapshot, keeping their update time. Readings of the
+     * types the restored information lacks are left as they are.
+     *
+     * @param iataCode the 3 letter IATA code of the airport
+     * @param restored the restored atmospheric information
+     * @return false if the airport is not known
+     */
+    static boolean restoreAtmosphericInformation(String iataCode, AtmosphericInformation restored) {
+        AirportData ad = findAirportData(iataCode);
+        List<DataPointType> types = new ArrayList<>();
+        List<DataPoint> dps = new ArrayList<>();
+        for (DataPointType type : DataPointType.values()) {
+            if (restored.get(type) != null) {
+                types.add(type);
+                dps.add(restored.get(type));
             }
         }
+        long time = restored.getLastUpdateTime();
+        return ad != null && atmosphericInformation.update(ad, types.toArray(new DataPointType[types.size()]),
+                dps.toArray(new DataPoint[dps.size()]), time,
+                previousUpdateTime -> recentUpdates.moved(previousUpdateTime, time));
+    }
 
-        throw new IllegalStateException("couldn't update atmospheric data");
+    /**
+     * @return the number of airports with at least one reading updated in the last {@link #RECENT_UPDATE_WINDOW}
+     * milliseconds, accurate to the minute
+     */
+    public static int countRecentlyUpdated() {
+        return recentUpdates.count(System.currentTimeMillis());
     }
-    
+
     /**
      * Deletes the airport identified by iata code.
      * @param iata
      */
-    public static synchronized void deleteAirportByCode(String iata){
-    	AirportData toRemove = new AirportData();
-    	toRemove.setIata(iata);
-    	Collections.synchronizedList(airportData).remove(toRemove);
-    	Collections.synchronizedMap(atmosphericInformation).remove(iata);
+    public static void deleteAirportByCode(String iata){
+    	WeatherMetrics.lock(registryLock, WeatherMetrics.registryLockWaits);
+    	try {
+    		AirportData toRemove = iata == null ? null : airportIndex.remove(iata);
+    		if (toRemove != null) {
+    			airportData.remove(toRemove);
+    			airportGrid.remove(toRemove);
+    			recentUpdates.remove(atmosphericInformation.remove(toRemove));
+    			history.remove(iata);
+    			// so the map does not grow with every code ever queried, and a code registered again starts at 0
+    			requestFrequency.remove(iata);
+    			WriteAheadLog l = log;
+    			if (l != null) {
+    				l.deleteAirport(iata);
+    			}
+    		}
+    	} finally {
+    		registryLock.unlock();
+    	}
     }
     
     /**
@@ -166,61 +403,126 @@ public class AirportService {
      * @param longitude in degrees
      *
      * @return the added airport
+     * @throws IllegalArgumentException if the airport is not valid, see {@link #isValidAirport}
      */
-    public static synchronized AirportData newAirport(String iataCode, double latitude, double longitude) {
+    public static AirportData newAirport(String iataCode, double latitude, double longitude) {
+        if (!isValidAirport(iataCode, latitude, longitude)) {
+            throw new IllegalArgumentException("invalid airport " + iataCode + " at " + latitude + ", " + longitude);
+        }
         AirportData ad = new AirportData();
 
-        AtmosphericInformation ai = new AtmosphericInformation();
         ad.setIata(iataCode);
         ad.setLatitude(latitude);
         ad.setLongitude(longitude);
-        List<AirportData> synchronizedAirports = Collections.synchronizedList(airportData);
-        if (!synchronizedAirports.contains(ad)){
-        	synchronizedAirports.add(ad);
-        	Collections.synchronizedMap(atmosphericInformation).put(iataCode, ai);
-        	return ad;
+        WeatherMetrics.lock(registryLock, WeatherMetrics.registryLockWaits);
+        try {
+        	if (!airportIndex.containsKey(iataCode)){
+        		// readings are held before the airport can be found, as adds and deletes hold the registry lock
+        		atmosphericInformation.add(ad);
+        		airportIndex.put(iataCode, ad);
+        		airportData.add(ad);
+        		airportGrid.add(ad);
+        		WriteAheadLog l = log;
+        		if (l != null) {
+        			l.newAirport(iataCode, latitude, longitude);
+        		}
+        		return ad;
+        	}
+        } finally {
+        	registryLock.unlock();
         }
         throw new IllegalStateException("Airport already exists");
     }
     
 
+    /**
+     * Add many new airports in one pass. The airports list and each spatial index cell are copied once for the whole
+     * batch instead of once per airport, and duplicates are detected through the index.
+     *
+     * @param airports the airports to add, with their iata code, latitude and longitude set
+     * @return the outcome of each airport, in the order given
+     */
+    public static List<AirportStatus> newAirports(List<AirportData> airports) {
+        AirportStatus[] statuses = new AirportStatus[airports.size()];
+        List<AirportData> added = new ArrayList<>(airports.size());
+        WeatherMetrics.lock(registryLock, WeatherMetrics.registryLockWaits);
+        try {
+            for (int i = 0; i < airports.size(); i++) {
+                AirportData ad = airports.get(i);
+                if (!isValidAirport(ad.getIata(), ad.getLatitude(), ad.getLongitude())) {
+                    statuses[i] = AirportStatus.MALFORMED;
+                } else if (airportIndex.containsKey(ad.getIata())) {
+                    statuses[i] = AirportStatus.DUPLICATE;
+                } else {
+                    atmosphericInformation.add(ad);
+                    airportIndex.put(ad.getIata(), ad);
+                    added.add(ad);
+                    statuses[i] = AirportStatus.OK;
+                }
+            }
+            airportGrid.addAll(added);
+            airportData.addAll(added);
+            WriteAheadLog l = log;
+            if (l != null) {
+                for (AirportData ad : added) {
+                    l.newAirport(ad.getIata(), ad.getLatitude(), ad.getLongitude());
+                }
+            }
+        } finally {
+            registryLock.unlock();
+        }
+        return Arrays.asList(statuses);
+    }
+
+    /**
+     * Checks an airport the same way for every path that registers one, so the write ahead log and snapshots can
+     * always restore what was accepted.
+     *
+     * @param iataCode the iata code, which must not be empty nor longer than {@link #MAX_IATA_LENGTH}
+     * @param latitude in degrees, within [-90, 90]
+     * @param longitude in degrees, within [-180, 180]
+     * @return whether the airport can be registered; NaN coordinates are not valid
+     */
+    static boolean isValidAirport(String iataCode, double latitude, double longitude) {
+        return iataCode != null && !iataCode.isEmpty() && iataCode.length() <= MAX_IATA_LENGTH
+                && Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180;
+    }
+
     /**
      * Records information about how often requests are made
      *
      * @param iata an iata code
      * @param radius query radius
      */
-    public static synchronized void updateRequestFrequency(String iata, Double radius) {
+    public static void updateRequestFrequency(String iata, double radius) {
+        totalRequests.increment();
         AirportData airportData = findAirportData(iata);
-        Map<AirportData, Integer> synchronizedReqFreq = Collections.synchronizedMap(requestFrequency);
-        Map<Double, Integer> synchronizedMap = Collections.synchronizedMap(radiusFreq);
-        synchronizedReqFreq.put(airportData, synchronizedReqFreq.getOrDefault(airportData, 0) + 1);
-        synchronizedMap.put(radius, synchronizedMap.getOrDefault(radius, 0) + 1);
+        if (airportData != null) {
+            LongAdder counter = requestFrequency.get(airportData.getIata());
+            if (counter == null) {
+                counter = requestFrequency.computeIfAbsent(airportData.getIata(), k -> new LongAdder());
+            }
+            counter.increment();
+        }
+        radiusFreq.record(radius);
     }
 
     /**
-     * Haversine distance between two airports.
+     * Haversine distance between two airports, from their precomputed unit vectors, see {@link GreatCircle}.
      *
      * @param ad1 airport 1
      * @param ad2 airport 2
      * @return the distance in KM
      */
     public static double calculateDistance(AirportData ad1, AirportData ad2) {
-        double deltaLat = Math.toRadians(ad2.getLatitude() - ad1.getLatitude());
-        double deltaLon = Math.toRadians(ad2.getLongitude() - ad1.getLongitude());
-        double a =  Math.pow(Math.sin(deltaLat / 2), 2) + Math.pow(Math.sin(deltaLon / 2), 2)
-                * Math.cos(ad1.getLatitude()) * Math.cos(ad2.getLatitude());
-        double c = 2 * Math.asin(Math.sqrt(a));
-        return R * c;
+        return GreatCircle.distance(ad1.x, ad1.y, ad1.z, ad2.x, ad2.y, ad2.z);
     }
     
     /**
      * A dummy init method that loads hard coded data
      */
     protected void init() {
-        airportData.clear();
-        atmosphericInformation.clear();
-        requestFrequency.clear();
+        clear();
 
         newAirport("BOS", 42.364347, -71.005181);
         newAirport("EWR", 40.6925, -74.168667);
@@ -229,4 +531,33 @@ public class AirportService {
         newAirport("MMU", 40.79935, -74.4148747);
     }
 
+    /**
+     * Starts or stops logging mutations of airports and readings.
+     *
+     * @param writeAheadLog the log to append mutations to, or null to stop logging
+     */
+    static void setLog(WriteAheadLog writeAheadLog) {
+        log = writeAheadLog;
+    }
+
+    /**
+     * Forgets all airports, readings and request statistics.
+     */
+    static void clear() {
+        registryLock.lock();
+        try {
+            airportData.clear();
+            airportIndex.clear();
+            airportGrid.clear();
+            atmosphericInformation.clear();
+            history.clear();
+            recentUpdates.clear();
+            requestFrequency.clear();
+            totalRequests.reset();
+            radiusFreq.clear();
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
 }
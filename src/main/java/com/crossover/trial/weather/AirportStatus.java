@@ -0,0 +1,16 @@
+package com.crossover.trial.weather;
+
+/**
+ * The outcome of one airport sent to the bulk airport registration end point.
+ */
+public enum AirportStatus {
+    /** the airport has been added */
+    OK,
+    /** an airport with the same iata code is already known, or appears earlier in the same request */
+    DUPLICATE,
+    /**
+     * the record is missing its iata code, its code is longer than {@link AirportService#MAX_IATA_LENGTH}, or its
+     * latitude or longitude is not a number in range
+     */
+    MALFORMED
+}
@@ -1,85 +1,176 @@
 package com.crossover.trial.weather;
 
+import java.nio.charset.StandardCharsets;
+
 /**
- * encapsulates sensor information for a particular location
+ * encapsulates sensor information for a particular location.
+ *
+ * Instances are immutable snapshots: an update creates a new instance with {@link #with(DataPointType, DataPoint, long)}
+ * which replaces the previous one, so readers always see all data points and the update time of a single snapshot.
+ * Because a snapshot never changes, its JSON form is serialized once and reused by every query, see {@link #toJson()}.
  */
 class AtmosphericInformation {
 
     /** temperature in degrees celsius */
-    private DataPoint temperature;
+    private final DataPoint temperature;
 
     /** wind speed in km/h */
-    private DataPoint wind;
+    private final DataPoint wind;
 
     /** humidity in percent */
-    private DataPoint humidity;
+    private final DataPoint humidity;
 
     /** precipitation in cm */
-    private DataPoint precipitation;
+    private final DataPoint precipitation;
 
     /** pressure in mmHg */
-    private DataPoint pressure;
+    private final DataPoint pressure;
 
     /** cloud cover percent from 0 - 100 (integer) */
-    private DataPoint cloudCover;
+    private final DataPoint cloudCover;
 
     /** the last time this data was updated, in milliseconds since UTC epoch */
-    private long lastUpdateTime;
+    private final long lastUpdateTime;
 
-    public AtmosphericInformation() {
+    /** the JSON form of this snapshot, serialized on first use */
+    private transient volatile byte[] json;
 
+    public AtmosphericInformation() {
+        this(null, null, null, null, null, null, 0);
     }
 
     protected AtmosphericInformation(DataPoint temperature, DataPoint wind, DataPoint humidity, DataPoint percipitation, DataPoint pressure, DataPoint cloudCover) {
+        this(temperature, wind, humidity, percipitation, pressure, cloudCover, System.currentTimeMillis());
+    }
+
+    AtmosphericInformation(DataPoint temperature, DataPoint wind, DataPoint humidity, DataPoint precipitation,
+                           DataPoint pressure, DataPoint cloudCover, long lastUpdateTime) {
         this.temperature = temperature;
         this.wind = wind;
         this.humidity = humidity;
-        this.precipitation = percipitation;
+        this.precipitation = precipitation;
         this.pressure = pressure;
         this.cloudCover = cloudCover;
-        this.lastUpdateTime = System.currentTimeMillis();
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    /**
+     * Creates a copy of this snapshot with one data point replaced.
+     *
+     * @param pointType the type of the data point to replace
+     * @param dp the new data point
+     * @param updateTime the update time of the new snapshot, in milliseconds since UTC epoch
+     * @return the new snapshot
+     */
+    AtmosphericInformation with(DataPointType pointType, DataPoint dp, long updateTime) {
+        switch (pointType) {
+            case WIND:
+                return new AtmosphericInformation(temperature, dp, humidity, precipitation, pressure, cloudCover, updateTime);
+            case TEMPERATURE:
+                return new AtmosphericInformation(dp, wind, humidity, precipitation, pressure, cloudCover, updateTime);
+            case HUMIDITY:
+                return new AtmosphericInformation(temperature, wind, dp, precipitation, pressure, cloudCover, updateTime);
+            case PRESSURE:
+                return new AtmosphericInformation(temperature, wind, humidity, precipitation, dp, cloudCover, updateTime);
+            case CLOUDCOVER:
+                return new AtmosphericInformation(temperature, wind, humidity, precipitation, pressure, dp, updateTime);
+            case PRECIPITATION:
+                return new AtmosphericInformation(temperature, wind, humidity, dp, pressure, cloudCover, updateTime);
+            default:
+                throw new IllegalArgumentException("unknown point type " + pointType);
+        }
+    }
+
+    /**
+     * @param pointType the type of the data point
+     * @return the data point of the given type, or null if none has been collected
+     */
+    DataPoint get(DataPointType pointType) {
+        switch (pointType) {
+            case WIND:
+                return wind;
+            case TEMPERATURE:
+                return temperature;
+            case HUMIDITY:
+                return humidity;
+            case PRESSURE:
+                return pressure;
+            case CLOUDCOVER:
+                return cloudCover;
+            case PRECIPITATION:
+                return precipitation;
+            default:
+                throw new IllegalArgumentException("unknown point type " + pointType);
+        }
+    }
+
+    /**
+     * @return true if at least one data point has been collected
+     */
+    boolean hasData() {
+        return temperature != null || wind != null || humidity != null
+                || precipitation != null || pressure != null || cloudCover != null;
+    }
+
+    /**
+     * The JSON form of this snapshot, as the query end point writes it. The bytes are serialized on first use and
+     * shared afterwards, callers must not modify them. Concurrent first calls may serialize more than once, to the
+     * same bytes.
+     *
+     * @return the UTF-8 encoded JSON object
+     */
+    byte[] toJson() {
+        byte[] result = json;
+        if (result == null) {
+            StringBuilder sb = new StringBuilder(256);
+            sb.append('{');
+            append(sb, "temperature", temperature).append(',');
+            append(sb, "wind", wind).append(',');
+            append(sb, "humidity", humidity).append(',');
+            append(sb, "precipitation", precipitation).append(',');
+            append(sb, "pressure", pressure).append(',');
+            append(sb, "cloudCover", cloudCover);
+            sb.append('}');
+            json = result = sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    /**
+     * Appends a data point member in the same form, and in the same property order, as Jackson writes it.
+     */
+    private static StringBuilder append(StringBuilder sb, String name, DataPoint dp) {
+        sb.append('"').append(name).append("\":");
+        if (dp == null) {
+            return sb.append("null");
+        }
+        return sb.append("{\"mean\":").append(dp.getMean())
+                .append(",\"first\":").append(dp.getFirst())
+                .append(",\"second\":").append(dp.getSecond())
+                .append(",\"third\":").append(dp.getThird())
+                .append(",\"count\":").append(dp.getCount())
+                .append('}');
     }
 
     public DataPoint getTemperature() {
         return temperature;
     }
-    public void setTemperature(DataPoint temperature) {
-        this.temperature = temperature;
-    }
     public DataPoint getWind() {
         return wind;
     }
-    public void setWind(DataPoint wind) {
-        this.wind = wind;
-    }
     public DataPoint getHumidity() {
         return humidity;
     }
-    public void setHumidity(DataPoint humidity) {
-        this.humidity = humidity;
-    }
     public DataPoint getPrecipitation() {
         return precipitation;
     }
-    public void setPrecipitation(DataPoint precipitation) {
-        this.precipitation = precipitation;
-    }
     public DataPoint getPressure() {
         return pressure;
     }
-    public void setPressure(DataPoint pressure) {
-        this.pressure = pressure;
-    }
     public DataPoint getCloudCover() {
         return cloudCover;
     }
-    public void setCloudCover(DataPoint cloudCover) {
-        this.cloudCover = cloudCover;
-    }
     protected long getLastUpdateTime() {
         return this.lastUpdateTime;
     }
-    protected void setLastUpdateTime(long lastUpdateTime) {
-        this.lastUpdateTime = lastUpdateTime;
-    }
 }
@@ -0,0 +1,19 @@
+package com.crossover.trial.weather;
+
+import java.util.ArrayList;
+
+/**
+ * The atmospheric information returned by a weather query. Written to the response with the cached JSON of each
+ * snapshot by {@link AtmosphericInformationWriter}, instead of being serialized again by Jackson.
+ *
+ * @author daniel
+ *
+ */
+class AtmosphericInformationList extends ArrayList<AtmosphericInformation> {
+
+    private static final long serialVersionUID = 1L;
+
+    AtmosphericInformationList() {
+        super(1);
+    }
+}
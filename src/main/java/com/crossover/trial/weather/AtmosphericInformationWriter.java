@@ -0,0 +1,64 @@
+package com.crossover.trial.weather;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Writes weather query results as a JSON array of the cached JSON of each {@link AtmosphericInformation} snapshot,
+ * so a query copies bytes instead of serializing every data point again.
+ *
+ * @author daniel
+ *
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class AtmosphericInformationWriter implements MessageBodyWriter<AtmosphericInformationList> {
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return AtmosphericInformationList.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(AtmosphericInformationList list, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        long size = list.isEmpty() ? 2 : list.size() + 1;
+        for (AtmosphericInformation ai : list) {
+            size += ai.toJson().length;
+        }
+        return size;
+    }
+
+    @Override
+    public void writeTo(AtmosphericInformationList list, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream out)
+            throws IOException, WebApplicationException {
+        write(list, out);
+    }
+
+    /**
+     * Writes the list as a JSON array.
+     *
+     * @param list the atmospheric information to write
+     * @param out the stream to write to, left open
+     */
+    static void write(AtmosphericInformationList list, OutputStream out) throws IOException {
+        out.write('[');
+        for (int i = 0; i < list.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(list.get(i).toJson());
+        }
+        out.write(']');
+    }
+}
@@ -0,0 +1,68 @@
+package com.crossover.trial.weather;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Holds the latest readings of each known airport for {@link AirportService}. Two engines are available, chosen
+ * with the weather.storage system property: {@link SnapshotAtmosphericStore}, the default, keeps an immutable
+ * {@link AtmosphericInformation} per airport, and {@link ColumnarAtmosphericStore} keeps readings in primitive
+ * arrays.
+ *
+ * Updates to one airport are applied one at a time, and readers always see the readings and update time of a
+ * single update.
+ */
+interface AtmosphericStore {
+
+    /**
+     * Starts holding readings for an airport, with none collected yet.
+     *
+     * @param ad the airport, not held yet
+     */
+    void add(AirportData ad);
+
+    /**
+     * Stops holding readings for an airport.
+     *
+     * @param ad the airport
+     * @return the airport's last update time, 0 if it had none, or -1 if the airport was not held
+     */
+    long remove(AirportData ad);
+
+    /**
+     * Stores data points for an airport, a later data point replacing an earlier one of the same type.
+     *
+     * @param ad the airport
+     * @param pointTypes the type of each data point
+     * @param dps the data points
+     * @param updateTime the update time to record, in milliseconds since UTC epoch
+     * @param applied called with the airport's previous update time while no other update to the airport can apply,
+     *                so what it records is in the order updates apply
+     * @return false if the airport is not held
+     */
+    boolean update(AirportData ad, DataPointType[] pointTypes, DataPoint[] dps, long updateTime,
+                   LongConsumer applied);
+
+    /**
+     * @param ad the airport
+     * @return the airport's readings, or null if the airport is not held
+     */
+    AtmosphericInformation get(AirportData ad);
+
+    /** Stops holding readings for every airport. */
+    void clear();
+
+    /**
+     * @param storage the engine name, "snapshot" or "columnar"
+     * @return a new empty store
+     */
+    static AtmosphericStore create(String storage) {
+        switch (storage) {
+            case "snapshot":
+                return new SnapshotAtmosphericStore();
+            case "columnar":
+                return new ColumnarAtmosphericStore();
+            default:
+                throw new IllegalArgumentException("unknown storage " + storage);
+        }
+    }
+}
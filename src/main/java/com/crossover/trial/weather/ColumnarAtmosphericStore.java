@@ -0,0 +1,207 @@
+package com.crossover.trial.weather;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Keeps readings in primitive arrays instead of objects. Each airport gets a slot, recorded in
+ * {@link AirportData#slot}, and each field of each point type is a column indexed by slot, so holding an airport's
+ * readings costs a fixed 160 bytes or so and no object at all. {@link AtmosphericInformation} and {@link DataPoint}
+ * views are only created for the airports a query or a snapshot reads, and are not cached.
+ *
+ * Slots are grouped in pages which are never moved, so adding airports never copies readings. Each page has a
+ * {@link StampedLock}: updates take its write lock, and reads are optimistic and retried under the read lock if an
+ * update ran meanwhile. Time waited for a held page lock is recorded in {@link WeatherMetrics#pageLockWaits}.
+ * Slots of removed airports are reused, so a slot also records which airport owns it, and an {@link AirportData}
+ * which no longer owns its slot is treated as not held.
+ */
+class ColumnarAtmosphericStore implements AtmosphericStore {
+
+    private static final int PAGE_BITS = 10;
+
+    /** number of slots per page */
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private static final int TYPE_COUNT = DataPointType.values().length;
+
+    /** a block of slots. Columns are indexed by point type ordinal * PAGE_SIZE + slot within the page */
+    private static final class Page {
+
+        final StampedLock lock = new StampedLock();
+
+        /** the airport owning each slot, null if the slot is free */
+        final AirportData[] owners = new AirportData[PAGE_SIZE];
+
+        final long[] updateTimes = new long[PAGE_SIZE];
+
+        /** bit i is set if the slot holds a reading of the point type with ordinal i */
+        final byte[] present = new byte[PAGE_SIZE];
+
+        final double[] means = new double[PAGE_SIZE * TYPE_COUNT];
+
+        final int[] firsts = new int[PAGE_SIZE * TYPE_COUNT];
+
+        final int[] seconds = new int[PAGE_SIZE * TYPE_COUNT];
+
+        final int[] thirds = new int[PAGE_SIZE * TYPE_COUNT];
+
+        final int[] counts = new int[PAGE_SIZE * TYPE_COUNT];
+    }
+
+    /** the pages, replaced by a longer copy when they are all in use */
+    private volatile Page[] pages = new Page[0];
+
+    /** the first slot never used, guarded by this */
+    private int next;
+
+    /** slots freed by removed airports, used before new ones, guarded by this */
+    private int[] free = new int[16];
+
+    /** number of slots in {@link #free}, guarded by this */
+    private int freeCount;
+
+    @Override
+    public synchronized void add(AirportData ad) {
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            slot = next++;
+            if (slot >>> PAGE_BITS == pages.length) {
+                Page[] grown = Arrays.copyOf(pages, pages.length + 1);
+                grown[pages.length] = new Page();
+                pages = grown;
+            }
+        }
+        Page page = pages[slot >>> PAGE_BITS];
+        int i = slot & (PAGE_SIZE - 1);
+        long stamp = page.lock.writeLock();
+        try {
+            page.owners[i] = ad;
+            page.updateTimes[i] = 0;
+            page.present[i] = 0;
+        } finally {
+            page.lock.unlockWrite(stamp);
+        }
+        ad.slot = slot;
+    }
+
+    @Override
+    public synchronized long remove(AirportData ad) {
+        Page page = page(ad.slot);
+        if (page == null) {
+            return -1;
+        }
+        int i = ad.slot & (PAGE_SIZE - 1);
+        long updateTime;
+        long stamp = page.lock.writeLock();
+        try {
+            if (page.owners[i] != ad) {
+                return -1;
+            }
+            page.owners[i] = null;
+            updateTime = page.updateTimes[i];
+        } finally {
+            page.lock.unlockWrite(stamp);
+        }
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = ad.slot;
+        return updateTime;
+    }
+
+    @Override
+    public boolean update(AirportData ad, DataPointType[] pointTypes, DataPoint[] dps, long updateTime,
+                          LongConsumer applied) {
+        Page page = page(ad.slot);
+        if (page == null) {
+            return false;
+        }
+        int i = ad.slot & (PAGE_SIZE - 1);
+        long stamp = WeatherMetrics.writeLock(page.lock, WeatherMetrics.pageLockWaits);
+        try {
+            if (page.owners[i] != ad) {
+                return false;
+            }
+            long previousUpdateTime = page.updateTimes[i];
+            for (int t = 0; t < pointTypes.length; t++) {
+                int type = pointTypes[t].ordinal();
+                int column = type * PAGE_SIZE + i;
+                page.means[column] = dps[t].getMean();
+                page.firsts[column] = dps[t].getFirst();
+                page.seconds[column] = dps[t].getSecond();
+                page.thirds[column] = dps[t].getThird();
+                page.counts[column] = dps[t].getCount();
+                page.present[i] |= 1 << type;
+            }
+            page.updateTimes[i] = updateTime;
+            applied.accept(previousUpdateTime);
+            return true;
+        } finally {
+            page.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public AtmosphericInformation get(AirportData ad) {
+        Page page = page(ad.slot);
+        if (page == null) {
+            return null;
+        }
+        int i = ad.slot & (PAGE_SIZE - 1);
+        long stamp = page.lock.tryOptimisticRead();
+        AtmosphericInformation ai = read(page, i, ad);
+        if (!page.lock.validate(stamp)) {
+            stamp = WeatherMetrics.readLock(page.lock, WeatherMetrics.pageLockWaits);
+            try {
+                ai = read(page, i, ad);
+            } finally {
+                page.lock.unlockRead(stamp);
+            }
+        }
+        return ai;
+    }
+
+    /** creates a view of a slot's readings, which may be inconsistent unless the page is locked or validated */
+    private static AtmosphericInformation read(Page page, int i, AirportData ad) {
+        if (page.owners[i] != ad) {
+            return null;
+        }
+        int present = page.present[i];
+        DataPoint[] dps = new DataPoint[TYPE_COUNT];
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            if ((present & 1 << type) != 0) {
+                int column = type * PAGE_SIZE + i;
+                dps[type] = new DataPoint(page.firsts[column], page.seconds[column], page.means[column],
+                        page.thirds[column], page.counts[column]);
+            }
+        }
+        return new AtmosphericInformation(dps[DataPointType.TEMPERATURE.ordinal()], dps[DataPointType.WIND.ordinal()],
+                dps[DataPointType.HUMIDITY.ordinal()], dps[DataPointType.PRECIPITATION.ordinal()],
+                dps[DataPointType.PRESSURE.ordinal()], dps[DataPointType.CLOUDCOVER.ordinal()],
+                page.updateTimes[i]);
+    }
+
+    /** @return the page holding a slot, or null if the slot has never been used */
+    private Page page(int slot) {
+        Page[] current = pages;
+        return slot < 0 || slot >>> PAGE_BITS >= current.length ? null : current[slot >>> PAGE_BITS];
+    }
+
+    /** Frees every slot, keeping the pages for the airports added next. */
+    @Override
+    public synchronized void clear() {
+        for (Page page : pages) {
+            long stamp = page.lock.writeLock();
+            try {
+                Arrays.fill(page.owners, null);
+            } finally {
+                page.lock.unlockWrite(stamp);
+            }
+        }
+        next = 0;
+        freeCount = 0;
+    }
+}
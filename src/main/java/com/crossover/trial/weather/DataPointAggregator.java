@@ -0,0 +1,97 @@
+package com.crossover.trial.weather;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Accumulates the readings of many airports into one {@link AggregateDataPoint} per point type, in a single pass.
+ * Sums, minimums and maximums are kept as they go, and quartiles are collected in primitive arrays to select the
+ * requested percentile at the end.
+ */
+class DataPointAggregator {
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /** number of airports with a reading of each type */
+    private final int[] airports = new int[TYPES.length];
+
+    private final long[] counts = new long[TYPES.length];
+
+    private final double[] sums = new double[TYPES.length];
+
+    /** sum of the means weighted by count */
+    private final double[] weightedSums = new double[TYPES.length];
+
+    private final double[] mins = new double[TYPES.length];
+
+    private final double[] maxs = new double[TYPES.length];
+
+    /** quartiles of each type, by point type ordinal then airport * 3 + quartile */
+    private final int[][] quartiles = new int[TYPES.length][];
+
+    /**
+     * @param expectedAirports the number of airports expected, to size the quartile arrays
+     */
+    DataPointAggregator(int expectedAirports) {
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        for (int t = 0; t < TYPES.length; t++) {
+            quartiles[t] = new int[Math.max(1, expectedAirports) * 3];
+        }
+    }
+
+    /**
+     * Adds an airport's readings.
+     */
+    void add(AtmosphericInformation ai) {
+        for (int t = 0; t < TYPES.length; t++) {
+            DataPoint dp = ai.get(TYPES[t]);
+            if (dp == null) {
+                continue;
+            }
+            int n = airports[t]++;
+            counts[t] += dp.getCount();
+            sums[t] += dp.getMean();
+            weightedSums[t] += dp.getMean() * dp.getCount();
+            mins[t] = Math.min(mins[t], dp.getMean());
+            maxs[t] = Math.max(maxs[t], dp.getMean());
+            if (quartiles[t].length < (n + 1) * 3) {
+                quartiles[t] = Arrays.copyOf(quartiles[t], quartiles[t].length * 2);
+            }
+            quartiles[t][n * 3] = dp.getFirst();
+            quartiles[t][n * 3 + 1] = dp.getSecond();
+            quartiles[t][n * 3 + 2] = dp.getThird();
+        }
+    }
+
+    /**
+     * @param percentile the percentile of the quartiles to report, from 0 to 100, by nearest rank
+     * @return the aggregate of each point type with at least one reading, keyed by lower case point type name, in
+     * {@link DataPointType} order
+     */
+    Map<String, AggregateDataPoint> result(double percentile) {
+        Map<String, AggregateDataPoint> result = new LinkedHashMap<>();
+        for (int t = 0; t < TYPES.length; t++) {
+            int n = airports[t];
+            if (n == 0) {
+                continue;
+            }
+            double mean = counts[t] > 0 ? weightedSums[t] / counts[t] : sums[t] / n;
+            // nearest rank, the 0th percentile being the lowest value
+            int rank = Math.max(0, (int) Math.ceil(percentile / 100 * n) - 1);
+            int[] values = new int[n];
+            int[] selected = new int[3];
+            for (int q = 0; q < 3; q++) {
+                for (int i = 0; i < n; i++) {
+                    values[i] = quartiles[t][i * 3 + q];
+                }
+                Arrays.sort(values);
+                selected[q] = values[rank];
+            }
+            result.put(TYPES[t].name().toLowerCase(), new AggregateDataPoint(n, counts[t], mean, mins[t], maxs[t],
+                    selected[0], selected[1], selected[2]));
+        }
+        return result;
+    }
+}
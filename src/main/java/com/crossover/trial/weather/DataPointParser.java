@@ -0,0 +1,400 @@
+package com.crossover.trial.weather;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Reads json formatted data points without reflection: the mean, first, second, third and count keys are copied
+ * straight into a {@link DataPoint}, other keys are skipped and missing keys keep their default value of 0. As with
+ * gson, a number may also be given as a string, and numbers which overflow to infinity are rejected.
+ *
+ * {@link #parse(InputStream)} tokenizes the UTF-8 request body as it arrives, without decoding it to a String.
+ */
+class DataPointParser {
+
+    /** longest key or number kept in the scratch buffer, longer keys are unknown and longer numbers malformed */
+    private static final int SCRATCH_SIZE = 64;
+
+    /** the powers of ten which are exactly representable as a double */
+    static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final InputStream in;
+
+    private final byte[] buffer = new byte[256];
+
+    private int position;
+
+    private int limit;
+
+    /** the current key or number */
+    private final byte[] scratch = new byte[SCRATCH_SIZE];
+
+    private int scratchLength;
+
+    private DataPointParser(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Parses a data point from a stream holding one json object.
+     *
+     * @param in the UTF-8 encoded json, read to its end
+     * @return the data point
+     * @throws MalformedJsonException if the stream does not hold a single json object with numeric data point keys
+     * @throws IOException if the stream can not be read
+     */
+    static DataPoint parse(InputStream in) throws IOException {
+        return new DataPointParser(in).readDataPoint();
+    }
+
+    /**
+     * Reads a data point from the json object at the reader's position.
+     *
+     * @param reader a reader positioned before a json object
+     * @return the data point
+     * @throws IOException if the reader does not hold a json object with numeric data point keys
+     */
+    static DataPoint read(JsonReader reader) throws IOException {
+        DataPoint dp = new DataPoint.Builder().build();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            try {
+                switch (name) {
+                    case "mean":
+                        dp.setMean(reader.nextDouble());
+                        break;
+                    case "first":
+                        dp.setFirst(reader.nextInt());
+                        break;
+                    case "second":
+                        dp.setSecond(reader.nextInt());
+                        break;
+                    case "third":
+                        dp.setThird(reader.nextInt());
+                        break;
+                    case "count":
+                        dp.setCount(reader.nextInt());
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            } catch (NumberFormatException e) {
+                throw new MalformedJsonException("invalid " + name + ": " + e.getMessage());
+            }
+        }
+        reader.endObject();
+        return dp;
+    }
+
+    private DataPoint readDataPoint() throws IOException {
+        DataPoint dp = new DataPoint.Builder().build();
+        expect(nextNonWhitespace(), '{');
+        int c = nextNonWhitespace();
+        if (c != '}') {
+            while (true) {
+                expect(c, '"');
+                int key = readKey();
+                expect(nextNonWhitespace(), ':');
+                c = nextNonWhitespace();
+                if (key < 0 || c == 'n') {
+                    skipValue(c);
+                } else {
+                    double value = c == '"' ? readQuotedNumber() : readNumber(c);
+                    switch (key) {
+                        case 0:
+                            dp.setMean(value);
+                            break;
+                        case 1:
+                            dp.setFirst(toInt(value));
+                            break;
+                        case 2:
+                            dp.setSecond(toInt(value));
+                            break;
+                        case 3:
+                            dp.setThird(toInt(value));
+                            break;
+                        default:
+                            dp.setCount(toInt(value));
+                    }
+                }
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    break;
+                }
+                expect(c, ',');
+                c = nextNonWhitespace();
+            }
+        }
+        if (nextNonWhitespace() != -1) {
+            throw new MalformedJsonException("unexpected content after data point");
+        }
+        return dp;
+    }
+
+    /**
+     * Reads a key whose opening quote has been consumed.
+     *
+     * @return 0 to 4 for mean, first, second, third and count, -1 for any other key
+     */
+    private int readKey() throws IOException {
+        scratchLength = 0;
+        boolean fits = true;
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                break;
+            } else if (c == '\\') {
+                c = readEscape();
+            } else if (c < 0x20) {
+                throw new MalformedJsonException("unterminated key");
+            }
+            if (scratchLength < SCRATCH_SIZE && c < 0x80) {
+                scratch[scratchLength++] = (byte) c;
+            } else {
+                fits = false;
+            }
+        }
+        if (!fits) {
+            return -1;
+        } else if (scratchIs("mean")) {
+            return 0;
+        } else if (scratchIs("first")) {
+            return 1;
+        } else if (scratchIs("second")) {
+            return 2;
+        } else if (scratchIs("third")) {
+            return 3;
+        } else if (scratchIs("count")) {
+            return 4;
+        }
+        return -1;
+    }
+
+    private boolean scratchIs(String key) {
+        if (key.length() != scratchLength) {
+            return false;
+        }
+        for (int i = 0; i < scratchLength; i++) {
+            if (scratch[i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** reads an escape sequence whose backslash has been consumed, returning the escaped character */
+    private int readEscape() throws IOException {
+        int c = next();
+        switch (c) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) {
+                        throw new MalformedJsonException("invalid unicode escape");
+                    }
+                    value = value * 16 + digit;
+                }
+                return value;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw new MalformedJsonException("invalid escape");
+        }
+    }
+
+    /** reads a json number starting with the given character */
+    private double readNumber(int c) throws IOException {
+        scratchLength = 0;
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean negative = c == '-';
+        boolean fraction = false;
+        boolean simple = true;
+        while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+            if (scratchLength == SCRATCH_SIZE) {
+                throw new MalformedJsonException("number too long");
+            }
+            scratch[scratchLength++] = (byte) c;
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else if (c != '-' || scratchLength != 1) {
+                simple = false;
+            }
+            c = peek();
+            if (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+                position++;
+            }
+        }
+        if (digits == 0) {
+            throw new MalformedJsonException("expected a number");
+        }
+        if (simple && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            // both operands are exact, so the quotient is the correctly rounded value parseDouble would return
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return parseScratch();
+    }
+
+    /** reads a number given as a string whose opening quote has been consumed, as gson's nextDouble does */
+    private double readQuotedNumber() throws IOException {
+        scratchLength = 0;
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                break;
+            } else if (c == '\\') {
+                c = readEscape();
+            } else if (c < 0x20) {
+                throw new MalformedJsonException("unterminated string");
+            }
+            if (scratchLength == SCRATCH_SIZE || c >= 0x80) {
+                throw new MalformedJsonException("expected a number");
+            }
+            scratch[scratchLength++] = (byte) c;
+        }
+        return parseScratch();
+    }
+
+    /** parses the number in the scratch buffer, which must be finite */
+    private double parseScratch() throws MalformedJsonException {
+        double value;
+        try {
+            value = Double.parseDouble(new String(scratch, 0, scratchLength, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw new MalformedJsonException("invalid number");
+        }
+        if (!Double.isFinite(value)) {
+            throw new MalformedJsonException("JSON forbids NaN and infinities: " + value);
+        }
+        return value;
+    }
+
+    private static int toInt(double value) throws MalformedJsonException {
+        int i = (int) value;
+        if (i != value) {
+            throw new MalformedJsonException("expected an int but was " + value);
+        }
+        return i;
+    }
+
+    /** skips the json value starting with the given character */
+    private void skipValue(int c) throws IOException {
+        if (c == ',' || c == ':' || c == '}' || c == ']') {
+            throw new MalformedJsonException("expected a value");
+        }
+        int depth = 0;
+        while (true) {
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == -1) {
+                throw new MalformedJsonException("unterminated value");
+            }
+            if (depth == 0) {
+                // scalars end before the next separator, which is left for the caller
+                int p = peek();
+                if (c == '"' || c == '}' || c == ']' || p == ',' || p == '}' || p == -1 || isWhitespace(p)) {
+                    return;
+                }
+            } else if (depth < 0) {
+                throw new MalformedJsonException("unbalanced value");
+            }
+            c = next();
+        }
+    }
+
+    /** skips a string whose opening quote has been consumed */
+    private void skipString() throws IOException {
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                next();
+            } else if (c == -1) {
+                throw new MalformedJsonException("unterminated string");
+            }
+        }
+    }
+
+    private static void expect(int c, char expected) throws MalformedJsonException {
+        if (c != expected) {
+            throw new MalformedJsonException("expected '" + expected + "'");
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = next();
+        while (isWhitespace(c)) {
+            c = next();
+        }
+        return c;
+    }
+
+    /** @return the next byte, or -1 at the end of the stream */
+    private int next() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    /** @return the next byte without consuming it, or -1 at the end of the stream */
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position] & 0xff;
+    }
+}
@@ -1,15 +1,64 @@
 package com.crossover.trial.weather;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
- * The various types of data points we can collect.
+ * The various types of data points we can collect, each with the range of mean values it accepts.
  *
  * @author code test administrator
  */
 public enum DataPointType {
-    WIND,
-    TEMPERATURE,
-    HUMIDITY,
-    PRESSURE,
-    CLOUDCOVER,
-    PRECIPITATION
+    WIND(0, Double.POSITIVE_INFINITY, true),
+    TEMPERATURE(-50, 100, false),
+    HUMIDITY(0, 100, true),
+    PRESSURE(0, Double.POSITIVE_INFINITY, true),
+    CLOUDCOVER(0, 100, true),
+    PRECIPITATION(0, Double.POSITIVE_INFINITY, true);
+
+    /** all types by case insensitive name, built once */
+    private static final Map<String, DataPointType> BY_NAME = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        for (DataPointType type : values()) {
+            BY_NAME.put(type.name(), type);
+        }
+    }
+
+    /** the lowest accepted mean, inclusive */
+    private final double minMean;
+
+    /** the highest accepted mean */
+    private final double maxMean;
+
+    /** whether the highest accepted mean is inclusive */
+    private final boolean maxInclusive;
+
+    DataPointType(double minMean, double maxMean, boolean maxInclusive) {
+        this.minMean = minMean;
+        this.maxMean = maxMean;
+        this.maxInclusive = maxInclusive;
+    }
+
+    /**
+     * Checks the data point's mean is within the range accepted for this type. An infinite mean is never accepted,
+     * as it can not be written back as json.
+     *
+     * @param dp the data point to check
+     * @return true if the data point can be stored as this type
+     */
+    public boolean accepts(DataPoint dp) {
+        double mean = dp.getMean();
+        return mean >= minMean && (maxInclusive ? mean <= maxMean : mean < maxMean) && !Double.isInfinite(mean);
+    }
+
+    /**
+     * Finds a type by name, ignoring case.
+     *
+     * @param name the type name, e.g. wind
+     * @return the type or null if there is no type with that name
+     */
+    public static DataPointType parse(String name) {
+        return name == null ? null : BY_NAME.get(name);
+    }
 }
@@ -0,0 +1,48 @@
+package com.crossover.trial.weather;
+
+/**
+ * One data point collected for an airport, as sent to the batch collection end point.
+ */
+public class DataPointUpdate {
+
+    /** the three letter IATA code of the airport */
+    private String iata;
+
+    /** the point type, {@link DataPointType} for a complete list */
+    private String pointType;
+
+    /** the collected data point */
+    private DataPoint dataPoint;
+
+    public DataPointUpdate() { }
+
+    public DataPointUpdate(String iata, String pointType, DataPoint dataPoint) {
+        this.iata = iata;
+        this.pointType = pointType;
+        this.dataPoint = dataPoint;
+    }
+
+    public String getIata() {
+        return iata;
+    }
+
+    public void setIata(String iata) {
+        this.iata = iata;
+    }
+
+    public String getPointType() {
+        return pointType;
+    }
+
+    public void setPointType(String pointType) {
+        this.pointType = pointType;
+    }
+
+    public DataPoint getDataPoint() {
+        return dataPoint;
+    }
+
+    public void setDataPoint(DataPoint dataPoint) {
+        this.dataPoint = dataPoint;
+    }
+}
@@ -0,0 +1,101 @@
+package com.crossover.trial.weather;
+
+/**
+ * Great circle distances computed from unit vectors, so that no trigonometry is left per pair of locations.
+ *
+ * A location is converted once to the unit vector (cos lat cos lon, cos lat sin lon, sin lat). The straight line
+ * chord c between two unit vectors relates to the haversine term by a = c^2 / 4, so the distance is
+ * 2 R asin(c / 2), accurate for close pairs since the vector differences do not cancel out. Beyond a quarter of the
+ * circumference asin loses precision, so the distance is measured from the antipode instead, with the chord to
+ * the antipode computed from the vector sums. Radius checks compare the squared chord with that of the radius and
+ * need no asin at all.
+ */
+final class GreatCircle {
+
+    /** the largest squared chord, between antipodes */
+    private static final double MAX_CHORD2 = 4;
+
+    private GreatCircle() {
+    }
+
+    /**
+     * Stores the unit vector of a location.
+     *
+     * @param latitude in degrees
+     * @param longitude in degrees
+     * @param xyz where to store x, y and z
+     * @param offset the index of x
+     */
+    static void unitVector(double latitude, double longitude, double[] xyz, int offset) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        double cosLat = Math.cos(lat);
+        xyz[offset] = cosLat * Math.cos(lon);
+        xyz[offset + 1] = cosLat * Math.sin(lon);
+        xyz[offset + 2] = Math.sin(lat);
+    }
+
+    /**
+     * @return the squared chord between two unit vectors
+     */
+    static double chord2(double x1, double y1, double z1, double x2, double y2, double z2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        double dz = z1 - z2;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * @return the great circle distance between two unit vectors in km
+     */
+    static double distance(double x1, double y1, double z1, double x2, double y2, double z2) {
+        double chord2 = chord2(x1, y1, z1, x2, y2, z2);
+        if (chord2 <= 2) {
+            return 2 * AirportService.R * Math.asin(Math.sqrt(chord2) / 2);
+        }
+        double sx = x1 + x2;
+        double sy = y1 + y2;
+        double sz = z1 + z2;
+        double antipodeChord2 = sx * sx + sy * sy + sz * sz;
+        return AirportService.R * (Math.PI - 2 * Math.asin(Math.min(1, Math.sqrt(antipodeChord2) / 2)));
+    }
+
+    /**
+     * @param radius a distance in km
+     * @return the squared chord of that distance, larger than any chord once the radius reaches the antipodes
+     */
+    static double maxChord2(double radius) {
+        double halfAngle = radius / (2 * AirportService.R);
+        if (halfAngle >= Math.PI / 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double chord = 2 * Math.sin(halfAngle);
+        return Math.min(chord * chord, MAX_CHORD2);
+    }
+
+    /**
+     * Selects the locations of an array within a squared chord of a center, a loop without branches besides the
+     * selection and without allocation.
+     *
+     * @param xyz unit vectors, 3 doubles each
+     * @param count the number of vectors
+     * @param x the center's x
+     * @param y the center's y
+     * @param z the center's z
+     * @param maxChord2 the largest squared chord selected
+     * @param selected where to store the index of each selected location, at least count long
+     * @return the number of locations selected
+     */
+    static int within(double[] xyz, int count, double x, double y, double z, double maxChord2, int[] selected) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = xyz[3 * i] - x;
+            double dy = xyz[3 * i + 1] - y;
+            double dz = xyz[3 * i + 2] - z;
+            // stored unconditionally and kept by advancing n, leaving no branch to mispredict
+            selected[n] = i;
+            n += dx * dx + dy * dy + dz * dz <= maxChord2 ? 1 : 0;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,142 @@
+package com.crossover.trial.weather;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in log-linear buckets, in the manner of HdrHistogram: values below {@link #SUB_BUCKETS} have a
+ * bucket each, and every power of two above is split in {@link #SUB_BUCKETS} / 2 equal buckets, so any value is
+ * reported within 1/64 of itself whatever its magnitude. Memory is fixed at a few thousand counters, and recording
+ * neither locks nor allocates, so many threads can record into the same histogram.
+ *
+ * The unit is up to the caller; the load generator records microseconds and {@link WeatherMetrics} nanoseconds.
+ */
+class LatencyHistogram {
+
+    /** number of buckets below the first power of two split in half-width buckets */
+    static final int SUB_BUCKETS = 128;
+
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    /** enough buckets for any positive long */
+    private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value.
+     *
+     * @param value the value, negative values are counted as 0
+     */
+    void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(index(value));
+        total.increment();
+        sum.add(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Adds the values recorded by another histogram.
+     *
+     * @param other the histogram to add, which should not be recorded into meanwhile
+     */
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        total.add(other.total.sum());
+        sum.add(other.sum.sum());
+        long m = max.get();
+        long otherMax = other.max.get();
+        while (otherMax > m && !max.compareAndSet(m, otherMax)) {
+            m = max.get();
+        }
+    }
+
+    /** Forgets all values. Values recorded meanwhile may be partly forgotten. */
+    void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /** @return the number of values recorded */
+    long count() {
+        return total.sum();
+    }
+
+    /** @return the sum of the values recorded */
+    long sum() {
+        return sum.sum();
+    }
+
+    /** @return the largest value recorded, 0 if there is none */
+    long max() {
+        return max.get();
+    }
+
+    /** @return the mean of the values recorded, 0 if there is none */
+    double mean() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the smallest value such that the given percentage of the values recorded are at most that value,
+     * rounded up to the end of its bucket but not above {@link #max()}, 0 if there is none
+     */
+    long valueAtPercentile(double percentile) {
+        long count = total.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // the value shifted right by this lies in [HALF, SUB_BUCKETS)
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /** @return the largest value counted in a bucket */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long lowest = (long) (HALF + (index - SUB_BUCKETS) % HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,36 @@
+package com.crossover.trial.weather;
+
+/**
+ * An airport found by the nearest airports query, with its distance and latest readings.
+ *
+ * @author daniel
+ */
+public class NearbyAirport {
+
+    /** the three letter IATA code */
+    private final String iata;
+
+    /** distance from the queried airport in km */
+    private final double distance;
+
+    /** the airport's latest readings */
+    private final AtmosphericInformation atmosphericInformation;
+
+    public NearbyAirport(String iata, double distance, AtmosphericInformation atmosphericInformation) {
+        this.iata = iata;
+        this.distance = distance;
+        this.atmosphericInformation = atmosphericInformation;
+    }
+
+    public String getIata() {
+        return iata;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public AtmosphericInformation getAtmosphericInformation() {
+        return atmosphericInformation;
+    }
+}
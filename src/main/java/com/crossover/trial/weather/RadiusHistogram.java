@@ -0,0 +1,79 @@
+package com.crossover.trial.weather;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts weather queries per whole km of query radius, without locking and without allocating on record.
+ *
+ * There is one bucket per km below the configured maximum radius, and a last overflow bucket counting every
+ * query with a larger radius, so memory and rendering cost stay bounded whatever radii clients send.
+ */
+public class RadiusHistogram {
+
+    /** the maximum radius used when none is configured, in km */
+    static final int DEFAULT_MAX_RADIUS = 1000;
+
+    /** one bucket per km below the maximum radius, then the overflow bucket */
+    private final LongAdder[] buckets;
+
+    public RadiusHistogram() {
+        this(DEFAULT_MAX_RADIUS);
+    }
+
+    /**
+     * @param maxRadius the radius in km from which queries are counted in the overflow bucket
+     */
+    public RadiusHistogram(int maxRadius) {
+        if (maxRadius < 1) {
+            throw new IllegalArgumentException("maximum radius must be at least 1 km: " + maxRadius);
+        }
+        buckets = new LongAdder[maxRadius + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one query.
+     *
+     * @param radius the query radius in km, negative radii are counted as 0
+     */
+    public void record(double radius) {
+        int overflow = buckets.length - 1;
+        int km = radius > 0 ? (radius < overflow ? (int) radius : overflow) : 0;
+        buckets[km].increment();
+    }
+
+    /**
+     * Records queries counted elsewhere, e.g. restored from a snapshot.
+     *
+     * @param km the whole km radius of the queries, counted in the overflow bucket from the maximum radius
+     * @param count the number of queries
+     */
+    public void add(int km, long count) {
+        buckets[Math.max(0, Math.min(km, buckets.length - 1))].add(count);
+    }
+
+    /**
+     * @return the number of queries for each whole km radius up to the largest radius queried, where the entry at
+     * the maximum radius counts all queries with that radius or more. If there has been no query, all buckets.
+     */
+    public int[] toArray() {
+        int length = buckets.length;
+        while (length > 0 && buckets[length - 1].sum() == 0) {
+            length--;
+        }
+        int[] hist = new int[length == 0 ? buckets.length : length];
+        for (int i = 0; i < hist.length; i++) {
+            hist[i] = (int) buckets[i].sum();
+        }
+        return hist;
+    }
+
+    /** Resets all counters. */
+    public void clear() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.crossover.trial.weather;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the recent data points of each airport and point type, so a time range can be queried.
+ *
+ * Each airport and point type has a ring of a fixed number of entries, created on its first data point and
+ * overwriting its oldest entry once full. An entry packs the time, the mean and the quartiles and count of a data
+ * point in four longs, so a ring is a single array. Rings are only created while the total stays within a memory
+ * budget, and entries older than the retention period are left out of queries.
+ *
+ * Data points are recorded while their airport is locked for the update, so a ring has one writer at a time.
+ */
+class ReadingHistory {
+
+    public final static Logger LOGGER = Logger.getLogger(ReadingHistory.class.getName());
+
+    /** number of entries per ring by default, a day of data points collected every 5 minutes */
+    static final int DEFAULT_SIZE = 288;
+
+    /** how long data points are kept by default, in milliseconds */
+    static final long DEFAULT_RETENTION = 86400000;
+
+    /** memory all rings may take by default, in bytes */
+    static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    /** longs per entry: time, mean bits, first and second, third and count */
+    private static final int STRIDE = 4;
+
+    private static final int TYPE_COUNT = DataPointType.values().length;
+
+    private final int size;
+
+    private final long retentionMillis;
+
+    /** the number of rings the memory budget allows */
+    private final int maxRings;
+
+    /** the number of rings created */
+    private final AtomicInteger rings = new AtomicInteger();
+
+    /** whether a ring could not be created because of the memory budget */
+    private final AtomicBoolean exhausted = new AtomicBoolean();
+
+    /** the rings of each airport, by point type ordinal */
+    private final Map<String, AtomicReferenceArray<Ring>> byAirport = new ConcurrentHashMap<>();
+
+    /**
+     * @param size number of entries per airport and point type, 0 to keep no history
+     * @param retentionMillis how long data points are kept, in milliseconds
+     * @param budget the memory all rings may take, in bytes
+     */
+    ReadingHistory(int size, long retentionMillis, long budget) {
+        if (size < 0 || retentionMillis <= 0 || budget < 0) {
+            throw new IllegalArgumentException("invalid history size " + size + ", retention " + retentionMillis
+                    + " or budget " + budget);
+        }
+        this.size = size;
+        this.retentionMillis = retentionMillis;
+        this.maxRings = size == 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, budget / (size * STRIDE * 8L));
+    }
+
+    /**
+     * Records a data point, unless the memory budget is used up and the airport has no ring for its type yet.
+     * Must be called while no other data point of the airport is recorded.
+     */
+    void record(String iata, DataPointType pointType, DataPoint dp, long time) {
+        if (maxRings == 0) {
+            return;
+        }
+        AtomicReferenceArray<Ring> types = byAirport.get(iata);
+        if (types == null) {
+            types = byAirport.computeIfAbsent(iata, k -> new AtomicReferenceArray<>(TYPE_COUNT));
+        }
+        Ring ring = types.get(pointType.ordinal());
+        if (ring == null) {
+            if (rings.incrementAndGet() > maxRings) {
+                rings.decrementAndGet();
+                if (!exhausted.getAndSet(true)) {
+                    LOGGER.warning("history memory budget used up, no history is kept for new airports");
+                }
+                return;
+            }
+            ring = new Ring(size);
+            types.set(pointType.ordinal(), ring);
+        }
+        ring.add(time, dp);
+    }
+
+    /**
+     * @param iata the airport's iata code
+     * @param pointType the point type
+     * @param from the start of the range, inclusive, in milliseconds since UTC epoch
+     * @param to the end of the range, inclusive, in milliseconds since UTC epoch
+     * @param maxPoints the most data points to return, at least 1
+     * @param now the current time, in milliseconds since UTC epoch
+     * @return the data points collected in the range and within the retention period, in the order they were
+     * collected. When there are more than maxPoints, the range is split in maxPoints intervals of the same length
+     * and the data points of each interval are merged into one, see {@link #downsample}
+     */
+    List<TimedDataPoint> query(String iata, DataPointType pointType, long from, long to, int maxPoints, long now) {
+        AtomicReferenceArray<Ring> types = byAirport.get(iata);
+        Ring ring = types == null ? null : types.get(pointType.ordinal());
+        from = Math.max(from, now - retentionMillis);
+        if (ring == null || from > to) {
+            return Collections.emptyList();
+        }
+        List<TimedDataPoint> points = ring.range(from, to);
+        return points.size() <= maxPoints ? points : downsample(points, from, to, maxPoints);
+    }
+
+    /**
+     * Merges the data points falling in each of maxPoints intervals of the same length. A merged data point has the
+     * time of the start of its interval, the sum of the counts, and the mean and quartiles averaged weighted by
+     * count, or evenly if all counts are 0. Intervals without data points are left out.
+     */
+    static List<TimedDataPoint> downsample(List<TimedDataPoint> points, long from, long to, int maxPoints) {
+        double width = (to - from + 1.0) / maxPoints;
+        // per interval: number of points, then sums of the mean and quartiles, evenly and weighted by count
+        double[][] sums = new double[9][maxPoints];
+        long[] counts = new long[maxPoints];
+        for (TimedDataPoint p : points) {
+            int interval = (int) Math.min(maxPoints - 1, (p.getTime() - from) / width);
+            sums[0][interval]++;
+            sums[1][interval] += p.getMean();
+            sums[2][interval] += p.getFirst();
+            sums[3][interval] += p.getSecond();
+            sums[4][interval] += p.getThird();
+            sums[5][interval] += p.getMean() * p.getCount();
+            sums[6][interval] += (double) p.getFirst() * p.getCount();
+            sums[7][interval] += (double) p.getSecond() * p.getCount();
+            sums[8][interval] += (double) p.getThird() * p.getCount();
+            counts[interval] += p.getCount();
+        }
+        List<TimedDataPoint> merged = new ArrayList<>();
+        for (int interval = 0; interval < maxPoints; interval++) {
+            if (sums[0][interval] == 0) {
+                continue;
+            }
+            double weight = counts[interval] > 0 ? counts[interval] : sums[0][interval];
+            int offset = counts[interval] > 0 ? 5 : 1;
+            merged.add(new TimedDataPoint(from + (long) Math.ceil(interval * width),
+                    sums[offset][interval] / weight,
+                    (int) Math.round(sums[offset + 1][interval] / weight),
+                    (int) Math.round(sums[offset + 2][interval] / weight),
+                    (int) Math.round(sums[offset + 3][interval] / weight),
+                    (int) Math.min(Integer.MAX_VALUE, counts[interval])));
+        }
+        return merged;
+    }
+
+    /** Forgets the history of an airport. */
+    void remove(String iata) {
+        AtomicReferenceArray<Ring> types = byAirport.remove(iata);
+        if (types != null) {
+            for (int i = 0; i < TYPE_COUNT; i++) {
+                if (types.get(i) != null) {
+                    rings.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /** Forgets the history of every airport. */
+    void clear() {
+        byAirport.clear();
+        rings.set(0);
+        exhausted.set(false);
+    }
+
+    /**
+     * The entries of one airport and point type. Queries read while a data point is recorded, so both lock the
+     * ring.
+     */
+    private static final class Ring {
+
+        private final long[] entries;
+
+        /** number of entries ever added */
+        private long added;
+
+        Ring(int size) {
+            entries = new long[size * STRIDE];
+        }
+
+        synchronized void add(long time, DataPoint dp) {
+            int i = (int) (added++ % (entries.length / STRIDE)) * STRIDE;
+            entries[i] = time;
+            entries[i + 1] = Double.doubleToRawLongBits(dp.getMean());
+            entries[i + 2] = (long) dp.getFirst() << 32 | dp.getSecond() & 0xffffffffL;
+            entries[i + 3] = (long) dp.getThird() << 32 | dp.getCount() & 0xffffffffL;
+        }
+
+        /** @return the entries collected between from and to, inclusive, oldest first */
+        synchronized List<TimedDataPoint> range(long from, long to) {
+            int size = entries.length / STRIDE;
+            long oldest = Math.max(0, added - size);
+            List<TimedDataPoint> points = new ArrayList<>();
+            for (long n = oldest; n < added; n++) {
+                int i = (int) (n % size) * STRIDE;
+                long time = entries[i];
+                if (time >= from && time <= to) {
+                    points.add(new TimedDataPoint(time, Double.longBitsToDouble(entries[i + 1]),
+                            (int) (entries[i + 2] >> 32), (int) entries[i + 2], (int) (entries[i + 3] >> 32),
+                            (int) entries[i + 3]));
+                }
+            }
+            return points;
+        }
+    }
+}
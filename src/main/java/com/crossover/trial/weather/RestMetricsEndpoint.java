@@ -0,0 +1,24 @@
+package com.crossover.trial.weather;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+/**
+ * Exposes {@link WeatherMetrics} for scraping by Prometheus or any tool reading its text format.
+ *
+ * @author daniel
+ *
+ */
+@Path("/metrics")
+public class RestMetricsEndpoint {
+
+    /** media type of the Prometheus text exposition format */
+    public static final String TEXT_FORMAT = "text/plain; version=0.0.4; charset=utf-8";
+
+    @GET
+    @Produces(TEXT_FORMAT)
+    public String metrics() {
+        return WeatherMetrics.render();
+    }
+}
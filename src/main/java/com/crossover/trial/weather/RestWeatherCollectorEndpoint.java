@@ -1,20 +1,30 @@
 package com.crossover.trial.weather;
 
 import static com.crossover.trial.weather.AirportService.addDataPoint;
+import static com.crossover.trial.weather.AirportService.addDataPoints;
 import static com.crossover.trial.weather.AirportService.airportData;
 import static com.crossover.trial.weather.AirportService.deleteAirportByCode;
 import static com.crossover.trial.weather.AirportService.findAirportData;
-import static com.crossover.trial.weather.AirportService.gson;
 import static com.crossover.trial.weather.AirportService.newAirport;
+import static com.crossover.trial.weather.AirportService.newAirports;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.ws.rs.Path;
 import javax.ws.rs.core.Response;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
 /**
  * A REST implementation of the WeatherCollector API. Accessible only to airport weather collection
  * sites via secure VPN.
@@ -34,23 +44,80 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint {
     @Override
 	public Response updateWeather(String iata, String pointType, 
 								  String dataPointJson) {
+		DataPoint dp;
+		try {
+			dp = DataPointParser.read(new JsonReader(new StringReader(dataPointJson)));
+		} catch (IOException | IllegalStateException e) {
+			LOGGER.log(Level.FINE, "malformed data point", e);
+			WeatherMetrics.rejected(DataPointType.parse(pointType), UpdateStatus.MALFORMED);
+			return Response.status(Response.Status.BAD_REQUEST).build();
+		}
+		return updateWeather(iata, pointType, dp);
+	}
+
+    @Override
+	public Response updateWeather(String iata, String pointType,
+								  InputStream dataPointJson) {
+		DataPoint dp;
 		try {
-			addDataPoint(iata, pointType, gson.fromJson(dataPointJson, DataPoint.class));
+			dp = DataPointParser.parse(dataPointJson);
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "malformed data point", e);
+			WeatherMetrics.rejected(DataPointType.parse(pointType), UpdateStatus.MALFORMED);
+			return Response.status(Response.Status.BAD_REQUEST).build();
+		}
+		return updateWeather(iata, pointType, dp);
+	}
+
+	private Response updateWeather(String iata, String pointType, DataPoint dp) {
+		try {
+			addDataPoint(iata, pointType, dp);
 		}catch (WeatherException e) {
-			e.printStackTrace();
+			LOGGER.log(Level.WARNING, "could not add data point", e);
 		}
 		return Response.status(Response.Status.OK).build();
 	}
 
+    @Override
+    public Response updateWeatherBatch(InputStream dataPointsJson) {
+        List<DataPointUpdate> updates = new ArrayList<>();
+        try {
+            JsonReader reader = new JsonReader(new InputStreamReader(dataPointsJson, StandardCharsets.UTF_8));
+            reader.beginArray();
+            while (reader.hasNext()) {
+                DataPointUpdate update = new DataPointUpdate();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                    } else if (name.equals("iata")) {
+                        update.setIata(reader.nextString());
+                    } else if (name.equals("pointType")) {
+                        update.setPointType(reader.nextString());
+                    } else if (name.equals("dataPoint")) {
+                        update.setDataPoint(DataPointParser.read(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                updates.add(update);
+            }
+            reader.endArray();
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.log(Level.FINE, "malformed data point batch", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK).entity(addDataPoints(updates)).build();
+    }
+
 
     @Override
     public Response getAirports() {
         List<String> retval = new ArrayList<>();
-        List<AirportData> synchronizedAirports = Collections.synchronizedList(airportData);
-        synchronized (synchronizedAirports){
-        	for (AirportData ad : synchronizedAirports) {
-        		retval.add(ad.getIata());
-        	}
+        for (AirportData ad : airportData) {
+        	retval.add(ad.getIata());
         }
         return Response.status(Response.Status.OK).entity(retval).build();
     }
@@ -64,10 +131,68 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint {
     @Override
 	public Response addAirport(String iata, String latString, 
 							   String longString) {
-    	newAirport(iata, Double.valueOf(latString), Double.valueOf(longString));
+    	double latitude;
+    	double longitude;
+    	try {
+    		latitude = Double.parseDouble(latString);
+    		longitude = Double.parseDouble(longString);
+    	} catch (NumberFormatException e) {
+    		return Response.status(Response.Status.BAD_REQUEST).build();
+    	}
+    	if (!AirportService.isValidAirport(iata, latitude, longitude)) {
+    		return Response.status(Response.Status.BAD_REQUEST).build();
+    	}
+    	try {
+    		newAirport(iata, latitude, longitude);
+    	} catch (IllegalStateException e) {
+    		return Response.status(Response.Status.CONFLICT).build();
+    	}
         return Response.status(Response.Status.OK).build();
 	}
     
+    @Override
+    public Response addAirports(InputStream airportsCsv) {
+        List<AirportData> airports = new ArrayList<>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(airportsCsv, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    airports.add(parseAirport(line));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "unreadable airport batch", e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK).entity(newAirports(airports)).build();
+    }
+
+    /**
+     * Reads an iata,latitude,longitude line. Fields that can not be read are left unset, or NaN, for
+     * {@link AirportService#newAirports(List)} to report the line as malformed.
+     */
+    private static AirportData parseAirport(String line) {
+        AirportData ad = new AirportData();
+        ad.setLatitude(Double.NaN);
+        ad.setLongitude(Double.NaN);
+        String[] fields = line.split(",", -1);
+        if (fields.length == 3) {
+            String iata = fields[0].trim();
+            if (iata.length() >= 2 && iata.charAt(0) == '"' && iata.charAt(iata.length() - 1) == '"') {
+                iata = iata.substring(1, iata.length() - 1);
+            }
+            ad.setIata(iata);
+            try {
+                ad.setLatitude(Double.parseDouble(fields[1]));
+                ad.setLongitude(Double.parseDouble(fields[2]));
+            } catch (NumberFormatException e) {
+                // reported as malformed
+            }
+        }
+        return ad;
+    }
+
     @Override
 	public Response deleteAirport(String iata) {
 		deleteAirportByCode(iata);
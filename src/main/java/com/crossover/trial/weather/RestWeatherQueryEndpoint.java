@@ -2,11 +2,11 @@ package com.crossover.trial.weather;
 
 import static com.crossover.trial.weather.AirportService.*;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 import javax.ws.rs.Path;
@@ -22,8 +22,18 @@ public class RestWeatherQueryEndpoint implements WeatherQueryEndpoint {
 
     public final static Logger LOGGER = Logger.getLogger("WeatherQuery");
 
+    /** most airports a nearest airports query may ask for */
+    static final int MAX_NEAREST = 1000;
+
+    /** most data points returned by a history query by default */
+    static final int DEFAULT_HISTORY_POINTS = 300;
+
+    /** most data points a history query may ask for */
+    static final int MAX_HISTORY_POINTS = 10000;
+
     /**
      * Retrieve service health including total size of valid data points and request frequency information.
+     * All statistics are maintained as requests and updates happen, so no lock is shared with the write path.
      *
      * @return health stats for the service as a string
      */
@@ -31,73 +41,32 @@ public class RestWeatherQueryEndpoint implements WeatherQueryEndpoint {
     public String ping() {
         Map<String, Object> retval = new HashMap<>();
 
-        int datasize = 0;
-        Map<String, AtmosphericInformation> synchronizedAI = Collections.synchronizedMap(atmosphericInformation);
-        synchronized (synchronizedAI){
-        	for (String iata : synchronizedAI.keySet()) {
-        		AtmosphericInformation ai = synchronizedAI.get(iata);
-        		// we only count recent readings
-        		if (ai.getCloudCover() != null
-        				|| ai.getHumidity() != null
-        				|| ai.getPressure() != null
-        				|| ai.getPrecipitation() != null
-        				|| ai.getTemperature() != null
-        				|| ai.getWind() != null) {
-        			// updated in the last day
-        			if (ai.getLastUpdateTime() > System.currentTimeMillis() - 86400000) {
-        				datasize++;
-        			}
-        		}
-        	}
-        }
-        retval.put("datasize", datasize);
+        // airports with readings updated in the last day
+        retval.put("datasize", countRecentlyUpdated());
 
         Map<String, Double> freq = new HashMap<>();
         // fraction of queries
-        List<AirportData> synchronizedAirports = Collections.synchronizedList(airportData);
-        Map<AirportData, Integer> synchronizedReqFreq = Collections.synchronizedMap(requestFrequency);
-        
-        synchronized (synchronizedAirports) {
-        	int total=0;
-        	synchronized (synchronizedReqFreq){
-        		for (AirportData ai: synchronizedReqFreq.keySet()){
-        			total+=synchronizedReqFreq.get(ai);
-        		}
-        	}
-        	for (AirportData data : synchronizedAirports) {
-        		if (synchronizedReqFreq.size() > 0){
-        			double frac = (double) synchronizedReqFreq.getOrDefault(data, 0) / total;
-        			freq.put(data.getIata(), frac);
-        		}
-        		else{
-        			freq.put(data.getIata(), null);
-        		}
-        		
+        long total = totalRequests.sum();
+        for (AirportData data : airportData) {
+        	if (total > 0){
+        		LongAdder count = requestFrequency.get(data.getIata());
+        		double frac = (double) (count == null ? 0 : count.sum()) / total;
+        		freq.put(data.getIata(), frac);
         	}
-		}
-        retval.put("iata_freq", freq);
-        
-        Map<Double, Integer> synchronizedRadFreq = Collections.synchronizedMap(radiusFreq);
-
-        synchronized (synchronizedRadFreq){
-        	int m = synchronizedRadFreq.keySet().stream()
-        			.max(Double::compare)
-        			.orElse(1000.0).intValue() + 1;
-        	
-        	int[] hist = new int[m];
-        	for (Map.Entry<Double, Integer> e : synchronizedRadFreq.entrySet()) {
-        		int i = e.getKey().intValue();
-        		hist[i] += e.getValue();
+        	else{
+        		freq.put(data.getIata(), null);
         	}
-        	retval.put("radius_freq", hist);
         }
+        retval.put("iata_freq", freq);
+        retval.put("radius_freq", radiusFreq.toArray());
 
         return gson.toJson(retval);
     }
 
     /**
      * Given a query in json format {'iata': CODE, 'radius': km} extracts the requested airport information and
-     * return a list of matching atmosphere information.
+     * return a list of matching atmosphere information. The list is written with the cached JSON of each airport's
+     * snapshot by {@link AtmosphericInformationWriter}.
      *
      * @param iata the iataCode
      * @param radiusString the radius in km
@@ -109,28 +78,82 @@ public class RestWeatherQueryEndpoint implements WeatherQueryEndpoint {
         double radius = radiusString == null || radiusString.trim().isEmpty() ? 0 : Double.valueOf(radiusString);
         updateRequestFrequency(iata, radius);
 
-        List<AtmosphericInformation> retval = new ArrayList<>();
-        if (radius == 0) {
-            AtmosphericInformation ai = Collections.synchronizedMap(atmosphericInformation).get(iata);
-            if (ai.getCloudCover() != null || ai.getHumidity() != null || ai.getPrecipitation() != null
-                    || ai.getPressure() != null || ai.getTemperature() != null || ai.getWind() != null){
-                     retval.add(ai);
-             }
-        } else {
-            AirportData ad = findAirportData(iata);
-            List<AirportData> synchronizedAirports = Collections.synchronizedList(airportData);
-            synchronized (synchronizedAirports) {
-            	for (int i=0;i< airportData.size(); i++){
-            		if (calculateDistance(ad, airportData.get(i)) <= radius){
-            			AtmosphericInformation ai = Collections.synchronizedMap(atmosphericInformation).get(airportData.get(i).getIata());
-            			if (ai.getCloudCover() != null || ai.getHumidity() != null || ai.getPrecipitation() != null
-            					|| ai.getPressure() != null || ai.getTemperature() != null || ai.getWind() != null){
-            				retval.add(ai);
-            			}
-            		}
-            	}
-			}
+        AtmosphericInformationList retval = new AtmosphericInformationList();
+        AirportData ad = findAirportData(iata);
+        if (ad != null) {
+            List<AirportData> airports = radius == 0
+                    ? Collections.singletonList(ad) : findAirportsWithinRadius(ad, radius);
+            for (AirportData nearby : airports) {
+                AtmosphericInformation ai = findAtmosphericInformation(nearby);
+                if (ai != null && ai.hasData()){
+                    retval.add(ai);
+                }
+            }
+        }
+        return Response.status(Response.Status.OK).entity(retval).build();
+    }
+
+    @Override
+    public Response nearest(String iata, String countString, String pointType, String maxAgeString) {
+        int count;
+        long maxAge;
+        try {
+            count = Integer.parseInt(countString);
+            maxAge = maxAgeString == null ? 0 : Long.parseLong(maxAgeString);
+        } catch (NumberFormatException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        DataPointType type = DataPointType.parse(pointType);
+        if (count < 1 || count > MAX_NEAREST || maxAge < 0 || (pointType != null && type == null)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        AirportData ad = findAirportData(iata);
+        List<NearbyAirport> retval = ad == null
+                ? Collections.emptyList() : findNearestAirports(ad, count, type, maxAge);
+        // counted with the radius the client would have needed to find them
+        updateRequestFrequency(iata, retval.isEmpty() ? 0 : retval.get(retval.size() - 1).getDistance());
+        return Response.status(Response.Status.OK).entity(retval).build();
+    }
+
+    @Override
+    public Response aggregate(String iata, String radiusString, String percentileString) {
+        double radius;
+        double percentile;
+        try {
+            radius = radiusString == null || radiusString.trim().isEmpty() ? 0 : Double.parseDouble(radiusString);
+            percentile = percentileString == null ? 50 : Double.parseDouble(percentileString);
+        } catch (NumberFormatException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if (!(radius >= 0) || !(percentile >= 0 && percentile <= 100)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
         }
+        updateRequestFrequency(iata, radius);
+
+        AirportData ad = findAirportData(iata);
+        Map<String, AggregateDataPoint> retval = ad == null
+                ? Collections.emptyMap() : aggregateWithinRadius(ad, radius, percentile);
         return Response.status(Response.Status.OK).entity(retval).build();
     }
+
+    @Override
+    public Response history(String iata, String pointType, String fromString, String toString,
+                            String pointsString) {
+        DataPointType type = DataPointType.parse(pointType);
+        long from;
+        long to;
+        int points;
+        try {
+            to = toString == null ? System.currentTimeMillis() : Long.parseLong(toString);
+            from = fromString == null ? 0 : Long.parseLong(fromString);
+            points = pointsString == null ? DEFAULT_HISTORY_POINTS : Integer.parseInt(pointsString);
+        } catch (NumberFormatException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if (type == null || points < 1 || points > MAX_HISTORY_POINTS) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK).entity(findHistory(iata, type, from, to, points)).build();
+    }
 }
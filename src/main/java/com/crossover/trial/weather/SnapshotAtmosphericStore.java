@@ -0,0 +1,49 @@
+package com.crossover.trial.weather;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Keeps an immutable {@link AtmosphericInformation} snapshot per airport, keyed by iata code, which updates replace
+ * atomically. Queries share the snapshots and their cached JSON form, at the cost of a snapshot and a
+ * {@link DataPoint} per reading on the heap.
+ */
+class SnapshotAtmosphericStore implements AtmosphericStore {
+
+    private final Map<String, AtmosphericInformation> snapshots = new ConcurrentHashMap<>();
+
+    @Override
+    public void add(AirportData ad) {
+        snapshots.put(ad.getIata(), new AtmosphericInformation());
+    }
+
+    @Override
+    public long remove(AirportData ad) {
+        AtmosphericInformation removed = snapshots.remove(ad.getIata());
+        return removed == null ? -1 : removed.getLastUpdateTime();
+    }
+
+    @Override
+    public boolean update(AirportData ad, DataPointType[] pointTypes, DataPoint[] dps, long updateTime,
+                          LongConsumer applied) {
+        return snapshots.computeIfPresent(ad.getIata(), (iata, ai) -> {
+            AtmosphericInformation updated = ai;
+            for (int i = 0; i < pointTypes.length; i++) {
+                updated = updated.with(pointTypes[i], dps[i], updateTime);
+            }
+            applied.accept(ai.getLastUpdateTime());
+            return updated;
+        }) != null;
+    }
+
+    @Override
+    public AtmosphericInformation get(AirportData ad) {
+        return snapshots.get(ad.getIata());
+    }
+
+    @Override
+    public void clear() {
+        snapshots.clear();
+    }
+}
@@ -0,0 +1,81 @@
+package com.crossover.trial.weather;
+
+/**
+ * A data point with the time it was collected, as returned by the history query.
+ *
+ * @author daniel
+ */
+public class TimedDataPoint {
+
+    /** when the data point was collected, in milliseconds since UTC epoch */
+    private long time;
+
+    private double mean;
+
+    private int first;
+
+    private int second;
+
+    private int third;
+
+    private int count;
+
+    public TimedDataPoint() { }
+
+    public TimedDataPoint(long time, double mean, int first, int second, int third, int count) {
+        this.time = time;
+        this.mean = mean;
+        this.first = first;
+        this.second = second;
+        this.third = third;
+        this.count = count;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public void setFirst(int first) {
+        this.first = first;
+    }
+
+    public int getSecond() {
+        return second;
+    }
+
+    public void setSecond(int second) {
+        this.second = second;
+    }
+
+    public int getThird() {
+        return third;
+    }
+
+    public void setThird(int third) {
+        this.third = third;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,17 @@
+package com.crossover.trial.weather;
+
+/**
+ * The outcome of one data point sent to the batch collection end point.
+ */
+public enum UpdateStatus {
+    /** the data point has been stored */
+    OK,
+    /** the airport is not known */
+    UNKNOWN_AIRPORT,
+    /** the point type is not one of {@link DataPointType} */
+    UNKNOWN_POINT_TYPE,
+    /** the data point's mean is outside the range its point type accepts */
+    OUT_OF_RANGE,
+    /** the record is missing its iata code, point type or data point */
+    MALFORMED
+}
@@ -0,0 +1,117 @@
+package com.crossover.trial.weather;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps count of how many airports were last updated within a sliding time window, maintained as updates happen
+ * so the count can be read without visiting every airport.
+ *
+ * The window is a ring of one minute buckets. Each bucket packs the minute it currently counts for and the number
+ * of airports whose latest update falls in that minute; a bucket is recycled when a newer minute maps to it, which
+ * only happens once its old minute has left the window. The count is accurate to the minute.
+ */
+class UpdateWindow {
+
+    private static final long MINUTE = 60000;
+
+    /** bits of a bucket holding the count, the remaining high bits hold the minute */
+    private static final int COUNT_BITS = 24;
+
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final AtomicLongArray buckets;
+
+    /**
+     * @param windowMillis the window length in milliseconds
+     */
+    UpdateWindow(long windowMillis) {
+        buckets = new AtomicLongArray((int) Math.max(1, windowMillis / MINUTE));
+    }
+
+    /**
+     * Records that an airport's latest update moved from one time to another.
+     *
+     * @param previousTime the time of the airport's previous update, 0 if there was none
+     * @param time the time of the update
+     */
+    void moved(long previousTime, long time) {
+        add(time);
+        remove(previousTime);
+    }
+
+    /**
+     * Counts an airport whose latest update happened at the given time.
+     *
+     * @param time the update time in milliseconds since UTC epoch, ignored if 0
+     */
+    void add(long time) {
+        if (time <= 0) {
+            return;
+        }
+        long minute = time / MINUTE;
+        int i = (int) (minute % buckets.length());
+        while (true) {
+            long bucket = buckets.get(i);
+            long bucketMinute = bucket >>> COUNT_BITS;
+            long updated;
+            if (bucketMinute == minute) {
+                updated = bucket + 1;
+            } else if (bucketMinute < minute) {
+                updated = (minute << COUNT_BITS) | 1;
+            } else {
+                // the bucket has moved on, so this time is already out of the window
+                return;
+            }
+            if (buckets.compareAndSet(i, bucket, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops counting an airport whose latest update happened at the given time, because it has been updated
+     * again or removed.
+     *
+     * @param time the update time previously passed to {@link #add(long)}, ignored if 0
+     */
+    void remove(long time) {
+        if (time <= 0) {
+            return;
+        }
+        long minute = time / MINUTE;
+        int i = (int) (minute % buckets.length());
+        while (true) {
+            long bucket = buckets.get(i);
+            if (bucket >>> COUNT_BITS != minute || (bucket & COUNT_MASK) == 0) {
+                // the bucket has moved on and no longer counts that minute
+                return;
+            }
+            if (buckets.compareAndSet(i, bucket, bucket - 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param now the current time in milliseconds since UTC epoch
+     * @return the number of airports whose latest update is within the window ending now
+     */
+    int count(long now) {
+        long oldest = now / MINUTE - buckets.length();
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            long bucket = buckets.get(i);
+            if (bucket >>> COUNT_BITS > oldest) {
+                count += bucket & COUNT_MASK;
+            }
+        }
+        return (int) count;
+    }
+
+    /** Forgets all updates. */
+    void clear() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+}
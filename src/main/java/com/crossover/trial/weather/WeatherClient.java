@@ -4,6 +4,7 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 /**
@@ -27,9 +28,17 @@ public class WeatherClient {
      * Sets up clients for each service.
      */
     public WeatherClient() {
+        this(BASE_URI);
+    }
+
+    /**
+     * Sets up clients for each service of the given server.
+     * @param baseUri base uri of the weather service
+     */
+    public WeatherClient(String baseUri) {
         Client client = ClientBuilder.newClient();
-        query = client.target(BASE_URI + "/query");
-        collect = client.target(BASE_URI + "/collect");
+        query = client.target(baseUri + "/query");
+        collect = client.target(baseUri + "/collect");
     }
     
     /**
@@ -77,6 +86,50 @@ public class WeatherClient {
          Response post = path.request().post(Entity.entity(dp, "application/json"));
     }
 
+    /**
+     * Queries the atmospheric information around an airport, reading and discarding the response.
+     * @param iata the iata code
+     * @param radius the radius in km
+     * @return the http status
+     */
+    public int weather(String iata, String radius) {
+        return consume(query.path("/weather/" + iata + "/" + radius).request().get());
+    }
+
+    /**
+     * Sends a data point already encoded as json.
+     * @param iata the iata code
+     * @param pointType the data point type
+     * @param dataPointJson the data point
+     * @return the http status
+     */
+    public int collect(String iata, String pointType, String dataPointJson) {
+        return consume(collect.path("/weather/" + iata + "/" + pointType).request()
+                .post(Entity.entity(dataPointJson, MediaType.APPLICATION_JSON)));
+    }
+
+    /**
+     * Registers airports with the bulk registration end point.
+     * @param airportsCsv iata,latitude,longitude lines
+     * @return the http status
+     */
+    public int addAirports(String airportsCsv) {
+        return consume(collect.path("/airports").request(MediaType.APPLICATION_JSON)
+                .post(Entity.entity(airportsCsv, WeatherCollectorEndpoint.TEXT_CSV)));
+    }
+
+    /** reads the whole response, so its connection can be reused, and closes it */
+    private static int consume(Response response) {
+        try {
+            if (response.hasEntity()) {
+                response.readEntity(String.class);
+            }
+            return response.getStatus();
+        } finally {
+            response.close();
+        }
+    }
+
     public static void main(String[] args) {
         WeatherClient wc = new WeatherClient();
         wc.pingCollect();
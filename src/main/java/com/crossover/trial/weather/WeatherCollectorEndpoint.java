@@ -1,5 +1,8 @@
 package com.crossover.trial.weather;
 
+import java.io.InputStream;
+
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -16,6 +19,9 @@ import javax.ws.rs.core.Response;
  */
 public interface WeatherCollectorEndpoint {
 
+    /** media type of the bulk airport registration body */
+    String TEXT_CSV = "text/csv";
+
     /**
      * A liveliness check for the collection endpoint.
      *
@@ -41,6 +47,40 @@ public interface WeatherCollectorEndpoint {
     					   @PathParam("pointType") String pointType,
     					   String dataPointJson);
 
+    /**
+     * Update the airports atmospheric information for a particular pointType with json formatted data point
+     * information, read from the request body as it arrives. Serves json requests to the same path as
+     * {@link #updateWeather(String, String, String)}.
+     *
+     * @param iataCode the 3 letter airport code
+     * @param pointType the point type, {@link DataPointType} for a complete list
+     * @param datapointJson a stream of a json dict containing mean, first, second, thrid and count keys
+     *
+     * @return HTTP Response code
+     */
+    @POST
+    @Path("/weather/{iata}/{pointType}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    Response updateWeather(@PathParam("iata") String iata,
+    					   @PathParam("pointType") String pointType,
+    					   InputStream dataPointJson);
+
+    /**
+     * Update the atmospheric information of many airports at once with a json formatted array of records, each a
+     * json dict with iata, pointType and dataPoint keys, where dataPoint holds mean, first, second, third and count
+     * keys. The body is read as a stream, and the data points of each airport are applied together.
+     *
+     * @param dataPointsJson the json array of records
+     *
+     * @return HTTP Response code and a json formatted list with the {@link UpdateStatus} of each record, in order,
+     * or a bad request code if the body is not a json array of records
+     */
+    @POST
+    @Path("/weather")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response updateWeatherBatch(InputStream dataPointsJson);
+
     /**
      * Return a list of known airports as a json formatted list
      *
@@ -68,7 +108,8 @@ public interface WeatherCollectorEndpoint {
      * @param iata the 3 letter airport code of the new airport
      * @param latString the airport's latitude in degrees as a string [-90, 90]
      * @param longString the airport's longitude in degrees as a string [-180, 180]
-     * @return HTTP Response code for the add operation
+     * @return HTTP Response code for the add operation, 400 if the code is too long or a coordinate is not a number
+     * in range, checked as for {@link #addAirports(InputStream)}, or 409 if the airport is already known
      */
     @POST
     @Path("/airport/{iata}/{lat}/{long}")
@@ -76,6 +117,19 @@ public interface WeatherCollectorEndpoint {
     					@PathParam("lat") String latString,
     					@PathParam("long") String longString);
 
+    /**
+     * Add many new airports to the known airport list at once. The body is read as a stream of csv lines, each
+     * holding the 3 letter airport code, the latitude and the longitude in degrees. The code may be quoted.
+     *
+     * @param airportsCsv the csv lines
+     * @return HTTP Response code and a json formatted list with the {@link AirportStatus} of each line, in order
+     */
+    @POST
+    @Path("/airports")
+    @Consumes(WeatherCollectorEndpoint.TEXT_CSV)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response addAirports(InputStream airportsCsv);
+
     /**
      * Remove an airport from the known airport list
      *
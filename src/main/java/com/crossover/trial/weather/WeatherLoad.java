@@ -0,0 +1,297 @@
+package com.crossover.trial.weather;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A load generator which drives a running weather server through {@link WeatherClient}, mixing weather queries
+ * and data point collection over a generated set of airports, and reports throughput and latency percentiles.
+ *
+ * Each of {@link #threads} workers has one request in flight at a time, and sends its share of the target rate on
+ * a fixed schedule. Latency is measured from the time a request was scheduled to be sent rather than from the time
+ * it was sent, so when the server stalls, the requests which would have been sent meanwhile are counted with the
+ * time they waited, instead of being silently omitted. The time from send to response is reported separately as
+ * the service time. The target rate is only reached if the threads can sustain it; a report with a throughput
+ * below the target means more threads are needed, or that the server is saturated.
+ *
+ * Airports are registered with the bulk registration end point before the run, named L followed by a number and
+ * spread uniformly over the globe. Requests made during the warm up are not reported.
+ *
+ * @author daniel
+ *
+ */
+public class WeatherLoad {
+
+    /** base uri of the weather service */
+    private static final String BASE_URI = "http://localhost:9090";
+
+    /** number of airports generated by default */
+    public static final int DEFAULT_AIRPORTS = 1000;
+
+    /** requests per second sent by default */
+    public static final int DEFAULT_RATE = 1000;
+
+    /** number of worker threads by default */
+    public static final int DEFAULT_THREADS = 16;
+
+    /** fraction of the requests which collect a data point by default, the others query the weather */
+    public static final double DEFAULT_WRITES = 0.2;
+
+    /** length of the measured run by default, in seconds */
+    public static final int DEFAULT_DURATION = 30;
+
+    /** length of the unreported warm up by default, in seconds */
+    public static final int DEFAULT_WARMUP = 5;
+
+    /** number of airports registered in one request */
+    private static final int CHUNK_SIZE = 1000;
+
+    private final WeatherClient client;
+
+    private final int airports;
+
+    private final double rate;
+
+    private final int threads;
+
+    private final double writes;
+
+    /** radius of the weather queries, in km */
+    private final String radius;
+
+    /** the generated airports' iata codes */
+    private final String[] codes;
+
+    /** wind data points to send, encoded once */
+    private final String[] dataPoints = new String[16];
+
+    /**
+     * Creates a load generator for the local weather service. The number of airports, rate, threads, fraction of
+     * writes and query radius are read from the load.airports, load.rate, load.threads, load.writes and load.radius
+     * system properties.
+     */
+    public WeatherLoad() {
+        this(BASE_URI, Integer.getInteger("load.airports", DEFAULT_AIRPORTS),
+                Integer.getInteger("load.rate", DEFAULT_RATE), Integer.getInteger("load.threads", DEFAULT_THREADS),
+                Double.parseDouble(System.getProperty("load.writes", String.valueOf(DEFAULT_WRITES))),
+                System.getProperty("load.radius", "0"));
+    }
+
+    /**
+     * @param baseUri base uri of the weather service
+     * @param airports number of airports to generate, at least 1
+     * @param rate requests per second to send, over all threads, at most one per nanosecond per thread
+     * @param threads number of worker threads, at least 1
+     * @param writes fraction of the requests which collect a data point, between 0 and 1
+     * @param radius radius of the weather queries, in km
+     */
+    public WeatherLoad(String baseUri, int airports, double rate, int threads, double writes, String radius) {
+        // each thread's interval between requests is a whole number of nanoseconds, so it must be at least 1
+        if (airports < 1 || !(rate > 0 && rate <= threads * 1e9) || threads < 1 || !(writes >= 0 && writes <= 1)) {
+            throw new IllegalArgumentException("invalid airports " + airports + ", rate " + rate + ", threads "
+                    + threads + " or writes " + writes);
+        }
+        this.client = new WeatherClient(baseUri);
+        this.airports = airports;
+        this.rate = rate;
+        this.threads = threads;
+        this.writes = writes;
+        this.radius = radius;
+        codes = new String[airports];
+        for (int i = 0; i < airports; i++) {
+            codes[i] = "L" + i;
+        }
+        for (int i = 0; i < dataPoints.length; i++) {
+            DataPoint dp = new DataPoint.Builder().withFirst(i).withSecond(i + 5).withThird(i + 10)
+                    .withMean(i + 4.5).withCount(10).build();
+            dataPoints[i] = AirportService.gson.toJson(dp);
+        }
+    }
+
+    /**
+     * Registers the generated airports. Airports the server already knows are left as they are.
+     *
+     * @return the number of requests which failed
+     */
+    public int register() {
+        Random random = new Random(airports);
+        StringBuilder chunk = new StringBuilder();
+        int failed = 0;
+        for (int i = 0; i < airports; i++) {
+            // uniform over the sphere rather than the lat/lon rectangle
+            double latitude = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+            double longitude = 360 * random.nextDouble() - 180;
+            chunk.append(codes[i]).append(',').append(latitude).append(',').append(longitude).append('\n');
+            if ((i + 1) % CHUNK_SIZE == 0 || i == airports - 1) {
+                if (client.addAirports(chunk.toString()) >= 400) {
+                    failed++;
+                }
+                chunk.setLength(0);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Sends requests at the target rate, and returns once the warm up and the run are over and every request has
+     * completed.
+     *
+     * @param warmupMillis time to send requests for before measuring, in milliseconds
+     * @param durationMillis time to measure for, in milliseconds
+     * @return the measured requests
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public Report run(long warmupMillis, long durationMillis) throws InterruptedException {
+        Report report = new Report(durationMillis);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        long end = measureFrom + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        // each worker sends one request per interval, offset so the workers take turns
+        long interval = (long) (threads * 1e9 / rate);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            long first = start + interval * i / threads;
+            Thread worker = new Thread(() -> work(first, interval, measureFrom, end, report), "weather-load-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return report;
+    }
+
+    private void work(long first, long interval, long measureFrom, long end, Report report) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long scheduled = first; scheduled < end; scheduled += interval) {
+            long now = System.nanoTime();
+            while (now < scheduled) {
+                LockSupport.parkNanos(scheduled - now);
+                now = System.nanoTime();
+            }
+            String iata = codes[random.nextInt(codes.length)];
+            boolean write = random.nextDouble() < writes;
+            int status;
+            try {
+                status = write
+                        ? client.collect(iata, "wind", dataPoints[random.nextInt(dataPoints.length)])
+                        : client.weather(iata, radius);
+            } catch (RuntimeException e) {
+                status = -1;
+            }
+            long done = System.nanoTime();
+            if (scheduled < measureFrom) {
+                continue;
+            }
+            if (status < 200 || status >= 400) {
+                report.errors.incrementAndGet();
+            } else if (write) {
+                report.writes.record(TimeUnit.NANOSECONDS.toMicros(done - scheduled));
+                report.writeService.record(TimeUnit.NANOSECONDS.toMicros(done - now));
+            } else {
+                report.reads.record(TimeUnit.NANOSECONDS.toMicros(done - scheduled));
+                report.readService.record(TimeUnit.NANOSECONDS.toMicros(done - now));
+            }
+        }
+    }
+
+    /**
+     * Registers airports, then sends requests to the local weather service and prints the report. The warm up and
+     * run lengths, in seconds, are read from the load.warmup and load.duration system properties.
+     * @param args
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        WeatherLoad load = new WeatherLoad();
+        if (System.getProperty("http.maxConnections") == null) {
+            // the default keeps only 5 idle connections per server, so most workers would reconnect every request
+            System.setProperty("http.maxConnections", String.valueOf(load.threads));
+        }
+        int failed = load.register();
+        if (failed > 0) {
+            System.err.println(failed + " airport registration requests failed");
+        }
+        Report report = load.run(TimeUnit.SECONDS.toMillis(Integer.getInteger("load.warmup", DEFAULT_WARMUP)),
+                TimeUnit.SECONDS.toMillis(Integer.getInteger("load.duration", DEFAULT_DURATION)));
+        System.out.println(String.format("target %.0f requests/s, %d threads, %d airports, %.0f%% writes",
+                load.rate, load.threads, load.airports, load.writes * 100));
+        System.out.println(report);
+        System.exit(report.getErrors() == 0 ? 0 : 2);
+    }
+
+    /**
+     * Requests measured during a run, with latencies in microseconds.
+     */
+    public static class Report {
+
+        private final long durationMillis;
+
+        /** latency of the weather queries, from when they were scheduled */
+        private final LatencyHistogram reads = new LatencyHistogram();
+
+        /** latency of the data points collected, from when they were scheduled */
+        private final LatencyHistogram writes = new LatencyHistogram();
+
+        /** latency of the weather queries, from when they were sent */
+        private final LatencyHistogram readService = new LatencyHistogram();
+
+        /** latency of the data points collected, from when they were sent */
+        private final LatencyHistogram writeService = new LatencyHistogram();
+
+        /** requests which failed or were answered with an error status */
+        private final AtomicLong errors = new AtomicLong();
+
+        private Report(long durationMillis) {
+            this.durationMillis = durationMillis;
+        }
+
+        public long getReads() {
+            return reads.count();
+        }
+
+        public long getWrites() {
+            return writes.count();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /** @return the successful requests per second */
+        public double getThroughput() {
+            return (getReads() + getWrites()) * 1000.0 / Math.max(durationMillis, 1);
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 100
+         * @return the latency of that percentile of all successful requests, from when they were scheduled, in
+         * microseconds
+         */
+        public long getLatency(double percentile) {
+            LatencyHistogram all = new LatencyHistogram();
+            all.add(reads);
+            all.add(writes);
+            return all.valueAtPercentile(percentile);
+        }
+
+        public String toString() {
+            return String.format("%.0f requests/s, %d errors%n", getThroughput(), getErrors())
+                    + String.format("%-16s %9s %9s %9s %9s %9s %9s %9s%n", "latency (ms)", "count", "mean", "p50",
+                            "p90", "p99", "p99.9", "max")
+                    + row("query", reads) + row("query service", readService)
+                    + row("collect", writes) + row("collect service", writeService);
+        }
+
+        private static String row(String name, LatencyHistogram histogram) {
+            return String.format("%-16s %9d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.count(),
+                    histogram.mean() / 1000, histogram.valueAtPercentile(50) / 1000.0,
+                    histogram.valueAtPercentile(90) / 1000.0, histogram.valueAtPercentile(99) / 1000.0,
+                    histogram.valueAtPercentile(99.9) / 1000.0, histogram.max() / 1000.0);
+        }
+    }
+}
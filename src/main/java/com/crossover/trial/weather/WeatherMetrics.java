@@ -0,0 +1,352 @@
+package com.crossover.trial.weather;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.attributes.Attribute;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpServerFilter;
+import org.glassfish.grizzly.http.server.HttpServerProbe;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.utils.NullaryFunction;
+
+/**
+ * Counts requests, data points rejected and lock waits, and renders them in the Prometheus text format for the
+ * /metrics end point, see {@link RestMetricsEndpoint}.
+ *
+ * Requests are timed by a {@link Probe} added to the Grizzly server, from the moment a request's headers are read
+ * until its response is complete, so the time spent writing the response is included. Each request is counted per
+ * end point, which is the path up to the first path parameter, and per http method, with the number of requests in
+ * flight, the responses sent by status class, and a latency histogram. The time a request was received is kept in
+ * a holder attached once to its connection, as requests on a connection are handled one at a time, so recording
+ * does not allocate.
+ *
+ * Requests timed are also queued to the {@link AccessLog}, if one is set.
+ *
+ * Lock waits are only timed when a lock is not free, so taking a free lock costs a single extra atomic operation.
+ * Latencies are recorded in nanoseconds and rendered in seconds.
+ *
+ * @author daniel
+ *
+ */
+public class WeatherMetrics {
+
+    /** end points requests are counted for, by prefix, and the last one for the requests of no other */
+    private static final String[] ENDPOINTS = {"/collect/ping", "/collect/weather", "/collect/airports",
+            "/collect/airport", "/collect/exit", "/query/ping", "/query/weather", "/query/nearest",
+            "/query/aggregate", "/query/history", "/metrics", "other"};
+
+    /** http methods requests are counted for, and the last one for the requests of no other */
+    private static final String[] METHOD_NAMES = {"GET", "POST", "DELETE", "PUT", "other"};
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private static final UpdateStatus[] REASONS = UpdateStatus.values();
+
+    /** quantiles rendered for each latency histogram */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /** request counters per end point and method, created when first used */
+    private static final AtomicReferenceArray<Requests> requests =
+            new AtomicReferenceArray<>(ENDPOINTS.length * METHOD_NAMES.length);
+
+    /** data points rejected per point type, the last for an unknown type, and reason */
+    private static final LongAdder[] rejections = new LongAdder[(TYPES.length + 1) * REASONS.length];
+
+    static {
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    /** time waited for the airport registry lock, when it was held */
+    static final LatencyHistogram registryLockWaits = new LatencyHistogram();
+
+    /** time waited for the columnar store's page locks, when they were held */
+    static final LatencyHistogram pageLockWaits = new LatencyHistogram();
+
+    /** where the requests timed are logged, if anywhere */
+    private static volatile AccessLog accessLog;
+
+    /**
+     * Times the requests of a Grizzly server. Kept apart so counting rejections and lock waits does not load
+     * Grizzly.
+     */
+    static final class Probe extends HttpServerProbe.Adapter {
+
+        /** the request being handled on a connection */
+        private static final class Timing {
+            /** index in {@link WeatherMetrics#requests}, -1 when no request is being handled */
+            int index = -1;
+            long start;
+        }
+
+        private static final Attribute<Timing> TIMING = Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
+                WeatherMetrics.class.getName() + ".timing", new NullaryFunction<Timing>() {
+                    @Override
+                    public Timing evaluate() {
+                        return new Timing();
+                    }
+                });
+
+        private static final Method[] METHODS = {Method.GET, Method.POST, Method.DELETE, Method.PUT};
+
+        /** @return the index in {@link WeatherMetrics#requests} of an end point and method */
+        private static int index(String uri, Method method) {
+            int endpoint = ENDPOINTS.length - 1;
+            for (int i = 0; i < ENDPOINTS.length - 1; i++) {
+                String prefix = ENDPOINTS[i];
+                if (uri.startsWith(prefix) && (uri.length() == prefix.length() || uri.charAt(prefix.length()) == '/')) {
+                    endpoint = i;
+                    break;
+                }
+            }
+            int m = METHODS.length;
+            for (int i = 0; i < METHODS.length; i++) {
+                if (METHODS[i] == method) {
+                    m = i;
+                    break;
+                }
+            }
+            return endpoint * METHOD_NAMES.length + m;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes") // the probe interface declares a raw Connection
+        public void onRequestReceiveEvent(HttpServerFilter filter, Connection connection, Request request) {
+            Timing timing = TIMING.get(connection);
+            timing.index = index(request.getRequestURI(), request.getMethod());
+            timing.start = System.nanoTime();
+            requests(timing.index).inFlight.increment();
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes") // the probe interface declares a raw Connection
+        public void onRequestCompleteEvent(HttpServerFilter filter, Connection connection, Response response) {
+            completed(connection, response.getRequest(), response.getStatus());
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes") // the probe interface declares a raw Connection
+        public void onRequestCancelEvent(HttpServerFilter filter, Connection connection, Request request) {
+            completed(connection, request, 0);
+        }
+
+        /**
+         * records the end of the request being handled on a connection, if it has not ended already, and queues it
+         * to the access log
+         */
+        private static void completed(Connection<?> connection, Request request, int status) {
+            Timing timing = TIMING.get(connection);
+            if (timing.index < 0) {
+                return;
+            }
+            Requests r = requests(timing.index);
+            timing.index = -1;
+            long duration = System.nanoTime() - timing.start;
+            r.latency.record(duration);
+            r.statuses[status >= 100 && status < 600 ? status / 100 - 1 : 5].increment();
+            r.inFlight.decrement();
+            AccessLog log = accessLog;
+            if (log != null) {
+                log.log(request.getMethod().getMethodString(), request.getRequestURI(), request.getQueryString(),
+                        status, duration);
+            }
+        }
+    }
+
+    /** counters of the requests to an end point with a method */
+    private static final class Requests {
+        final LongAdder inFlight = new LongAdder();
+        /** responses by status class, 1xx to 5xx, then requests cancelled */
+        final LongAdder[] statuses = new LongAdder[6];
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Requests() {
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+            }
+        }
+    }
+
+    private WeatherMetrics() {
+    }
+
+    /** @return the counters at an index in {@link #requests}, created if need be */
+    private static Requests requests(int index) {
+        Requests r = requests.get(index);
+        if (r == null) {
+            requests.compareAndSet(index, null, new Requests());
+            r = requests.get(index);
+        }
+        return r;
+    }
+
+    /**
+     * Counts a data point which was not stored.
+     *
+     * @param type the point type, null if it is not known
+     * @param reason why it was not stored
+     */
+    static void rejected(DataPointType type, UpdateStatus reason) {
+        rejections[(type == null ? TYPES.length : type.ordinal()) * REASONS.length + reason.ordinal()].increment();
+    }
+
+    /**
+     * @param type the point type, null for unknown point types
+     * @param reason why data points were not stored
+     * @return the number of data points rejected
+     */
+    static long rejections(DataPointType type, UpdateStatus reason) {
+        return rejections[(type == null ? TYPES.length : type.ordinal()) * REASONS.length + reason.ordinal()].sum();
+    }
+
+    /** takes a lock, recording the time waited if it was held */
+    static void lock(ReentrantLock lock, LatencyHistogram waits) {
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            waits.record(System.nanoTime() - start);
+        }
+    }
+
+    /** takes a write lock, recording the time waited if it was held */
+    static long writeLock(StampedLock lock, LatencyHistogram waits) {
+        long stamp = lock.tryWriteLock();
+        if (stamp == 0) {
+            long start = System.nanoTime();
+            stamp = lock.writeLock();
+            waits.record(System.nanoTime() - start);
+        }
+        return stamp;
+    }
+
+    /** takes a read lock, recording the time waited if it was held */
+    static long readLock(StampedLock lock, LatencyHistogram waits) {
+        long stamp = lock.tryReadLock();
+        if (stamp == 0) {
+            long start = System.nanoTime();
+            stamp = lock.readLock();
+            waits.record(System.nanoTime() - start);
+        }
+        return stamp;
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format, version 0.0.4. Only the end points and methods
+     * which received requests, and the point types and reasons with rejections, are listed.
+     *
+     * @return the metrics
+     */
+    static String render() {
+        StringBuilder sb = new StringBuilder(4096);
+        header(sb, "weather_requests_in_flight", "gauge", "Requests being handled.");
+        for (int i = 0; i < requests.length(); i++) {
+            Requests r = requests.get(i);
+            if (r != null) {
+                labels(sb.append("weather_requests_in_flight"), i).append("} ").append(r.inFlight.sum()).append('\n');
+            }
+        }
+        header(sb, "weather_responses_total", "counter", "Requests completed, by response status class.");
+        for (int i = 0; i < requests.length(); i++) {
+            Requests r = requests.get(i);
+            if (r != null) {
+                for (int s = 0; s < r.statuses.length; s++) {
+                    long count = r.statuses[s].sum();
+                    if (count > 0) {
+                        labels(sb.append("weather_responses_total"), i).append(",status=\"")
+                                .append(s < 5 ? (s + 1) + "xx" : "cancelled").append("\"} ").append(count)
+                                .append('\n');
+                    }
+                }
+            }
+        }
+        header(sb, "weather_request_duration_seconds", "summary",
+                "Time from reading a request's headers to completing its response.");
+        for (int i = 0; i < requests.length(); i++) {
+            Requests r = requests.get(i);
+            if (r != null) {
+                StringBuilder labels = labels(new StringBuilder(), i);
+                summary(sb, "weather_request_duration_seconds", labels.toString(), r.latency);
+            }
+        }
+        header(sb, "weather_ingest_rejections_total", "counter", "Data points not stored, by point type and reason.");
+        for (int t = 0; t <= TYPES.length; t++) {
+            for (UpdateStatus reason : REASONS) {
+                long count = rejections[t * REASONS.length + reason.ordinal()].sum();
+                if (count > 0) {
+                    sb.append("weather_ingest_rejections_total{point_type=\"")
+                            .append(t < TYPES.length ? TYPES[t].name().toLowerCase() : "unknown")
+                            .append("\",reason=\"").append(reason.name().toLowerCase()).append("\"} ")
+                            .append(count).append('\n');
+                }
+            }
+        }
+        header(sb, "weather_lock_wait_seconds", "summary", "Time waited for a lock which was held.");
+        summary(sb, "weather_lock_wait_seconds", "{lock=\"airport_registry\"", registryLockWaits);
+        summary(sb, "weather_lock_wait_seconds", "{lock=\"columnar_page\"", pageLockWaits);
+        AccessLog log = accessLog;
+        if (log != null) {
+            header(sb, "weather_access_log_dropped_total", "counter",
+                    "Requests not logged as the log was behind or could not be written.");
+            sb.append("weather_access_log_dropped_total ").append(log.dropped()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /** appends the opening brace and labels of a request counter, without the closing brace */
+    private static StringBuilder labels(StringBuilder sb, int index) {
+        return sb.append("{endpoint=\"").append(ENDPOINTS[index / METHOD_NAMES.length]).append("\",method=\"")
+                .append(METHOD_NAMES[index % METHOD_NAMES.length]).append('"');
+    }
+
+    /**
+     * @param labels the opening brace and labels of the series, without the closing brace
+     */
+    private static void summary(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            sb.append(name).append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.valueAtPercentile(quantile * 100))).append('\n');
+        }
+        sb.append(name).append("_sum").append(labels).append("} ").append(seconds(histogram.sum())).append('\n');
+        sb.append(name).append("_count").append(labels).append("} ").append(histogram.count()).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return (double) nanos / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Starts or stops logging the requests timed.
+     *
+     * @param log the access log to queue requests to, or null to stop logging
+     */
+    static void setAccessLog(AccessLog log) {
+        accessLog = log;
+    }
+
+    /**
+     * Forgets all metrics, to be called while no request is being handled.
+     */
+    static void clear() {
+        for (int i = 0; i < requests.length(); i++) {
+            requests.set(i, null);
+        }
+        for (LongAdder rejection : rejections) {
+            rejection.reset();
+        }
+        registryLockWaits.clear();
+        pageLockWaits.clear();
+    }
+}
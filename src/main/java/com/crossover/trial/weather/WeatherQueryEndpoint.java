@@ -4,6 +4,7 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -39,4 +40,62 @@ public interface WeatherQueryEndpoint {
     @Path("/weather/{iata}/{radius}")
     @Produces(MediaType.APPLICATION_JSON)
     Response weather(@PathParam("iata") String iata, @PathParam("radius") String radiusString);
+
+    /**
+     * Retrieve the airports nearest to the given airport, the airport itself included, with their distance and most
+     * up to date atmospheric information. Airports may be restricted to those with a reading of a given type, or
+     * updated recently.
+     *
+     * @param iata the three letter airport code
+     * @param countString the number of airports to return
+     * @param pointType the point type the airports must have a reading of, any airport by default
+     * @param maxAgeString how recently the airports must have been updated in milliseconds, any airport by default
+     *
+     * @return an HTTP Response and a list of {@link NearbyAirport}, nearest first, or a bad request code if a
+     * parameter is not valid
+     */
+    @GET
+    @Path("/nearest/{iata}/{count}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response nearest(@PathParam("iata") String iata, @PathParam("count") String countString,
+                     @QueryParam("pointType") String pointType, @QueryParam("maxAge") String maxAgeString);
+
+    /**
+     * Retrieve a summary of the most up to date atmospheric information from the given airport and other airports
+     * in the given radius: for each point type, the number of airports and measurements, the mean, lowest and
+     * highest mean, and a percentile of each quartile across airports.
+     *
+     * @param iata the three letter airport code
+     * @param radiusString the radius, in km, from which to collect weather data
+     * @param percentileString the percentile of the quartiles to report, from 0 to 100, 50 by default
+     *
+     * @return an HTTP Response and a json dict of {@link AggregateDataPoint} keyed by lower case point type name,
+     * or a bad request code if a parameter is not valid
+     */
+    @GET
+    @Path("/aggregate/{iata}/{radius}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response aggregate(@PathParam("iata") String iata, @PathParam("radius") String radiusString,
+                       @QueryParam("percentile") String percentileString);
+
+    /**
+     * Retrieve the data points of one type collected at an airport over a time range, oldest first. Data points are
+     * kept for a limited time, see {@link ReadingHistory}. When the range holds more data points than requested, it
+     * is split in intervals of the same length and the data points of each interval are merged into one.
+     *
+     * @param iata the three letter airport code
+     * @param pointType the point type, {@link DataPointType} for a complete list
+     * @param fromString the start of the range in milliseconds since UTC epoch, the retention period by default
+     * @param toString the end of the range in milliseconds since UTC epoch, now by default
+     * @param pointsString the most data points to return, 300 by default
+     *
+     * @return an HTTP Response and a list of {@link TimedDataPoint}, or a bad request code if a parameter is not
+     * valid
+     */
+    @GET
+    @Path("/history/{iata}/{pointType}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response history(@PathParam("iata") String iata, @PathParam("pointType") String pointType,
+                     @QueryParam("from") String fromString, @QueryParam("to") String toString,
+                     @QueryParam("points") String pointsString);
 }
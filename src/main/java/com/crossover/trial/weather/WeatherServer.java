@@ -4,14 +4,14 @@ import static java.lang.String.format;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.glassfish.grizzly.Connection;
 import org.glassfish.grizzly.http.server.HttpServer;
-import org.glassfish.grizzly.http.server.HttpServerFilter;
-import org.glassfish.grizzly.http.server.HttpServerProbe;
-import org.glassfish.grizzly.http.server.Request;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
 
@@ -26,26 +26,78 @@ public class WeatherServer {
 
     private static final String BASE_URL = "http://localhost:9090/";
 
+    /** time between two state snapshots by default, in milliseconds */
+    private static final long DEFAULT_SNAPSHOT_PERIOD = 60000;
+
+    /** longest time logged updates wait to be forced to disk by default, in milliseconds */
+    private static final long DEFAULT_FSYNC_INTERVAL = 1000;
+
+    /**
+     * Starts the server.
+     *
+     * @param args optionally an airports file, in csv or snapshot format, loaded before the server starts. See
+     *             {@link AirportFile}. The snapshot and the write ahead log below are applied over it, see
+     *             {@link #restore(String, Path, Path, long)}. When the weather.snapshot.file system property is set, the state is restored
+     *             from that file if it exists, then saved to it every weather.snapshot.period milliseconds and on
+     *             shutdown, see {@link WeatherSnapshot}. When the weather.wal.file system property is set, updates
+     *             logged to that file are replayed, then updates are logged to it and forced to disk every
+     *             weather.wal.fsync milliseconds, see {@link WriteAheadLog}. When the weather.accesslog.file system
+     *             property is set, requests are logged to that file, see {@link AccessLog}: weather.accesslog.sample
+     *             sets the fraction of successful requests logged, weather.accesslog.size the size in bytes at
+     *             which the file is rotated, weather.accesslog.files the number of rotated files kept and
+     *             weather.accesslog.buffer the number of requests queued before they are dropped
+     */
     public static void main(String[] args) {
         try {
             System.out.println("Starting Weather App local testing server: " + BASE_URL);
-            AirportService.getInstance().init();
+            Path snapshot = System.getProperty("weather.snapshot.file") == null
+                    ? null : Paths.get(System.getProperty("weather.snapshot.file"));
+            Path walFile = System.getProperty("weather.wal.file") == null
+                    ? null : Paths.get(System.getProperty("weather.wal.file"));
+            WriteAheadLog log = restore(args.length > 0 ? args[0] : null, snapshot, walFile,
+                    Long.getLong("weather.wal.fsync", DEFAULT_FSYNC_INTERVAL));
+            if (snapshot != null) {
+                WeatherSnapshot.schedule(snapshot, log,
+                        Long.getLong("weather.snapshot.period", DEFAULT_SNAPSHOT_PERIOD));
+            }
+            final WriteAheadLog wal = log;
+            AccessLog accessLog = null;
+            if (System.getProperty("weather.accesslog.file") != null) {
+                accessLog = new AccessLog(Paths.get(System.getProperty("weather.accesslog.file")),
+                        Integer.getInteger("weather.accesslog.buffer", AccessLog.DEFAULT_CAPACITY),
+                        Long.getLong("weather.accesslog.size", AccessLog.DEFAULT_MAX_BYTES),
+                        Integer.getInteger("weather.accesslog.files", AccessLog.DEFAULT_FILES),
+                        Double.parseDouble(System.getProperty("weather.accesslog.sample", "1")));
+                WeatherMetrics.setAccessLog(accessLog);
+            }
+            final AccessLog requestLog = accessLog;
             
             final ResourceConfig resourceConfig = new ResourceConfig();
             resourceConfig.register(RestWeatherCollectorEndpoint.class);
             resourceConfig.register(RestWeatherQueryEndpoint.class);
+            resourceConfig.register(RestMetricsEndpoint.class);
+            resourceConfig.register(AtmosphericInformationWriter.class);
 
             HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URL), resourceConfig, false);
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 server.shutdownNow();
+                try {
+                    if (snapshot != null) {
+                        WeatherSnapshot.checkpoint(snapshot, wal);
+                    }
+                    if (wal != null) {
+                        wal.close();
+                    }
+                    if (requestLog != null) {
+                        requestLog.close();
+                    }
+                } catch (IOException e) {
+                    Logger.getLogger(WeatherServer.class.getName()).log(Level.SEVERE, "could not save state", e);
+                }
             }));
 
-            HttpServerProbe probe = new HttpServerProbe.Adapter() {
-                public void onRequestReceiveEvent(HttpServerFilter filter, Connection connection, Request request) {
-                    System.out.println(request.getRequestURI());
-                }
-            };
-            server.getServerConfiguration().getMonitoringConfig().getWebServerConfig().addProbes(probe);
+            server.getServerConfiguration().getMonitoringConfig().getWebServerConfig()
+                    .addProbes(new WeatherMetrics.Probe());
 
 
             // the autograder waits for this output before running automated tests, please don't remove it
@@ -59,4 +111,63 @@ public class WeatherServer {
             Logger.getLogger(WeatherServer.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
+
+    /**
+     * Sets up the state the server starts with. The airports file is loaded first, then the snapshot replaces the
+     * state if it exists, and the write ahead log is replayed over it. So an airport of the file deleted later stays
+     * deleted across restarts, and the airports of the file are not logged again on every start.
+     *
+     * @param airports the airports file, or null if there is none
+     * @param snapshot the snapshot file, or null if snapshots are not taken
+     * @param walFile the write ahead log, or null if updates are not logged
+     * @param fsyncMillis the longest time logged updates wait to be forced to disk
+     * @return the write ahead log updates are now logged to, or null if there is none
+     * @throws IOException if a file can not be read, or the log can not be opened
+     */
+    static WriteAheadLog restore(String airports, Path snapshot, Path walFile, long fsyncMillis) throws IOException {
+        AirportService.getInstance().init();
+        if (airports != null) {
+            loadAirports(airports);
+        }
+        if (snapshot != null && Files.exists(snapshot)) {
+            long start = System.nanoTime();
+            int restored = WeatherSnapshot.restore(snapshot);
+            System.out.println(format("Restored %d airports from %s in %d ms", restored, snapshot,
+                    (System.nanoTime() - start) / 1000000));
+        }
+        if (walFile == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        int replayed = WriteAheadLog.replay(walFile);
+        System.out.println(format("Replayed %d updates from %s in %d ms", replayed, walFile,
+                (System.nanoTime() - start) / 1000000));
+        WriteAheadLog log = new WriteAheadLog(walFile, fsyncMillis);
+        AirportService.setLog(log);
+        return log;
+    }
+
+    /**
+     * Adds the airports of a file to the ones already known, straight into the service.
+     *
+     * @param file the airports file, in csv or snapshot format
+     */
+    static void loadAirports(String file) throws IOException {
+        long start = System.nanoTime();
+        int added = 0;
+        int duplicates = 0;
+        int malformed = 0;
+        List<AirportStatus> statuses = AirportService.newAirports(AirportFile.read(Paths.get(file)));
+        for (AirportStatus status : statuses) {
+            if (status == AirportStatus.OK) {
+                added++;
+            } else if (status == AirportStatus.DUPLICATE) {
+                duplicates++;
+            } else {
+                malformed++;
+            }
+        }
+        System.out.println(format("Loaded %d airports from %s in %d ms, skipped %d duplicate and %d malformed",
+                added, file, (System.nanoTime() - start) / 1000000, duplicates, malformed));
+    }
 }
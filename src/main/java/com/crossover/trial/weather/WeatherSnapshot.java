@@ -0,0 +1,278 @@
+package com.crossover.trial.weather;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves the in-memory state of {@link AirportService} to a compact binary file, and restores it at startup, so a
+ * restart keeps the known airports, their latest readings and the request statistics.
+ *
+ * A snapshot is written without pausing ingest: the airport list is copied on write and atmospheric information
+ * snapshots are immutable, so each airport is saved with a consistent set of readings. Counters are read as they
+ * are at that moment. The file is written next to the target and moved over it, so a crash never leaves a partial
+ * snapshot behind.
+ *
+ * The file starts with {@link #MAGIC} and the time it was taken. Then comes the number of airports, and for each
+ * its iata code as a length and UTF-8 bytes, latitude, longitude, last update time, a bit mask of the {@link DataPointType}s it has readings
+ * for, each reading's mean, first, second, third and count, and its request count. It ends with the total request
+ * count and the radius histogram.
+ *
+ * @author daniel
+ *
+ */
+public class WeatherSnapshot {
+
+    public final static Logger LOGGER = Logger.getLogger(WeatherSnapshot.class.getName());
+
+    /** first bytes of a snapshot, "WST" and the format version 2 */
+    static final int MAGIC = 0x57535402;
+
+    /** first bytes of a version 1 snapshot, which wrote iata codes with {@link DataOutputStream#writeUTF(String)} */
+    private static final int MAGIC_V1 = 0x57535401;
+
+    /** longest iata code read, in bytes, so a corrupt length does not exhaust memory */
+    private static final int MAX_IATA_BYTES = 1024;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private WeatherSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot to a file, replacing it atomically. The file and the move are forced to disk before this
+     * returns, so write ahead log segments can be deleted once it has.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the snapshot can not be written
+     */
+    public static void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(Channels.newOutputStream(channel));
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path dir = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // some platforms, Windows among them, can not open a directory to force it
+            LOGGER.log(Level.FINE, "could not force directory " + dir, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current state.
+     *
+     * @param out where to write the snapshot, left open
+     * @throws IOException if the snapshot can not be written
+     */
+    static void write(OutputStream out) throws IOException {
+        List<AirportData> airports = new ArrayList<>(AirportService.airportData);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        data.writeInt(MAGIC);
+        data.writeLong(System.currentTimeMillis());
+        data.writeInt(airports.size());
+        for (AirportData ad : airports) {
+            AtmosphericInformation ai = AirportService.findAtmosphericInformation(ad);
+            if (ai == null) {
+                // deleted since the list was copied, keep the airport without readings
+                ai = new AtmosphericInformation();
+            }
+            byte[] iata = ad.getIata().getBytes(StandardCharsets.UTF_8);
+            if (iata.length > MAX_IATA_BYTES) {
+                // registration bounds iata codes, so this is a bug rather than a reason to write a corrupt file
+                throw new IOException("iata code of " + iata.length + " bytes");
+            }
+            data.writeShort(iata.length);
+            data.write(iata);
+            data.writeDouble(ad.getLatitude());
+            data.writeDouble(ad.getLongitude());
+            data.writeLong(ai.getLastUpdateTime());
+            int mask = 0;
+            for (DataPointType type : TYPES) {
+                if (ai.get(type) != null) {
+                    mask |= 1 << type.ordinal();
+                }
+            }
+            data.writeByte(mask);
+            for (DataPointType type : TYPES) {
+                DataPoint dp = ai.get(type);
+                if (dp != null) {
+                    data.writeDouble(dp.getMean());
+                    data.writeInt(dp.getFirst());
+                    data.writeInt(dp.getSecond());
+                    data.writeInt(dp.getThird());
+                    data.writeInt(dp.getCount());
+                }
+            }
+            LongAdder requests = AirportService.requestFrequency.get(ad.getIata());
+            data.writeLong(requests == null ? 0 : requests.sum());
+        }
+        data.writeLong(AirportService.totalRequests.sum());
+        int[] radii = AirportService.radiusFreq.toArray();
+        data.writeInt(radii.length);
+        for (int count : radii) {
+            data.writeInt(count);
+        }
+        data.flush();
+    }
+
+    /**
+     * Replaces the current state with a snapshot file.
+     *
+     * @param file the snapshot file
+     * @return the number of airports restored
+     * @throws IOException if the file can not be read or is not a snapshot
+     */
+    public static int restore(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return restore(in);
+        }
+    }
+
+    /**
+     * Replaces the current state with a snapshot.
+     *
+     * @param in the snapshot
+     * @return the number of airports restored, not counting those skipped as malformed or duplicate, which are
+     * logged
+     * @throws IOException if the stream can not be read or is not a snapshot
+     */
+    static int restore(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        int magic = data.readInt();
+        if (magic != MAGIC && magic != MAGIC_V1) {
+            throw new IOException("not a weather snapshot");
+        }
+        data.readLong();
+        int count = data.readInt();
+        List<AirportData> airports = new ArrayList<>(count);
+        List<AtmosphericInformation> readings = new ArrayList<>(count);
+        long[] requests = new long[count];
+        for (int i = 0; i < count; i++) {
+            AirportData ad = new AirportData();
+            if (magic == MAGIC_V1) {
+                ad.setIata(data.readUTF());
+            } else {
+                int length = data.readUnsignedShort();
+                if (length > MAX_IATA_BYTES) {
+                    throw new IOException("corrupt snapshot, iata code of " + length + " bytes");
+                }
+                byte[] iata = new byte[length];
+                data.readFully(iata);
+                ad.setIata(new String(iata, StandardCharsets.UTF_8));
+            }
+            ad.setLatitude(data.readDouble());
+            ad.setLongitude(data.readDouble());
+            long lastUpdateTime = data.readLong();
+            int mask = data.readUnsignedByte();
+            AtmosphericInformation ai = new AtmosphericInformation();
+            for (DataPointType type : TYPES) {
+                if ((mask & 1 << type.ordinal()) != 0) {
+                    DataPoint dp = new DataPoint.Builder().withMean(data.readDouble()).withFirst(data.readInt())
+                            .withSecond(data.readInt()).withThird(data.readInt()).withCount(data.readInt()).build();
+                    ai = ai.with(type, dp, lastUpdateTime);
+                }
+            }
+            airports.add(ad);
+            readings.add(ai);
+            requests[i] = data.readLong();
+        }
+        long totalRequests = data.readLong();
+        int[] radii = new int[data.readInt()];
+        for (int i = 0; i < radii.length; i++) {
+            radii[i] = data.readInt();
+        }
+
+        AirportService.clear();
+        List<AirportStatus> statuses = AirportService.newAirports(airports);
+        int restored = 0;
+        for (int i = 0; i < count; i++) {
+            AirportData ad = airports.get(i);
+            String iata = ad.getIata();
+            if (statuses.get(i) != AirportStatus.OK) {
+                // a duplicate's readings would overwrite those of the airport kept
+                LOGGER.warning("skipping " + statuses.get(i) + " airport " + iata + " at " + ad.getLatitude() + ", "
+                        + ad.getLongitude() + " and its readings");
+                continue;
+            }
+            restored++;
+            if (readings.get(i).hasData()) {
+                AirportService.restoreAtmosphericInformation(iata, readings.get(i));
+            }
+            if (requests[i] > 0) {
+                AirportService.requestFrequency.computeIfAbsent(iata, k -> new LongAdder()).add(requests[i]);
+            }
+        }
+        AirportService.totalRequests.add(totalRequests);
+        for (int i = 0; i < radii.length; i++) {
+            AirportService.radiusFreq.add(i, radii[i]);
+        }
+        return restored;
+    }
+
+    /**
+     * Writes a snapshot to a file, starting a new write ahead log segment first and deleting the segments it made
+     * redundant once it is written.
+     *
+     * @param file the snapshot file
+     * @param log the write ahead log, or null if there is none
+     * @throws IOException if the snapshot can not be written
+     */
+    public static void checkpoint(Path file, WriteAheadLog log) throws IOException {
+        if (log != null) {
+            log.rotate();
+        }
+        write(file);
+        if (log != null) {
+            log.compact();
+        }
+    }
+
+    /**
+     * Takes a checkpoint periodically from a daemon thread. A failed checkpoint is logged and retried at the next
+     * period.
+     *
+     * @param file the snapshot file
+     * @param log the write ahead log, or null if there is none
+     * @param periodMillis the time between two snapshots, in milliseconds
+     * @return the scheduler, to shut down to stop taking snapshots
+     */
+    public static ScheduledExecutorService schedule(Path file, WriteAheadLog log, long periodMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "weather-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint(file, log);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "could not write snapshot " + file, e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+}
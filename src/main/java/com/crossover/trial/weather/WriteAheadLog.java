@@ -0,0 +1,350 @@
+package com.crossover.trial.weather;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append only log of the airports added and deleted and the data points collected, so updates made after the
+ * last {@link WeatherSnapshot} survive a restart.
+ *
+ * Request threads only encode a record and queue it. A writer thread appends everything queued with one gathering
+ * write, and forces the file to disk at most once per fsync interval, so collecting a data point never waits for
+ * the disk. Records still queued or not yet forced are lost if the process crashes.
+ *
+ * The log is split in numbered segments, base.1, base.2 and so on. {@link #rotate()} starts a new segment before a
+ * snapshot is taken, and {@link #compact()} deletes the segments which the snapshot made redundant. The segment
+ * written when the snapshot started is kept until the next snapshot, since the last of its updates may have been
+ * logged just before they became visible to the snapshot. Replaying a segment over a snapshot which already holds
+ * some of its updates leaves the same state, as every airport and reading ends up as last logged.
+ *
+ * Each record is its payload length, the CRC32 of the payload and the payload: a type byte, the iata code and the
+ * type's fields. Replay stops at the first incomplete or corrupt record of a segment.
+ *
+ * @author daniel
+ *
+ */
+public class WriteAheadLog implements Closeable {
+
+    public final static Logger LOGGER = Logger.getLogger(WriteAheadLog.class.getName());
+
+    private static final byte NEW_AIRPORT = 1;
+
+    private static final byte DELETE_AIRPORT = 2;
+
+    private static final byte DATA_POINT = 3;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /** longest time the writer thread waits for records before checking whether to force or close */
+    private static final long POLL_MILLIS = 100;
+
+    /** longest record payload, bounds what replay reads for a corrupt length */
+    private static final int MAX_PAYLOAD = 1024;
+
+    private final Path base;
+
+    private final long fsyncMillis;
+
+    /** encoded records waiting for the writer thread */
+    private final BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
+
+    private final Thread writer;
+
+    private volatile boolean closed;
+
+    /** number of the segment being written, guarded by this */
+    private long segment;
+
+    /** the segment being written, guarded by this */
+    private FileChannel channel;
+
+    /** segment being written when the last snapshot started, guarded by this */
+    private long snapshotSegment;
+
+    /** whether records have been written since the last force, guarded by this */
+    private boolean dirty;
+
+    private long lastForce = System.currentTimeMillis();
+
+    /**
+     * Opens a new segment after the existing ones, and starts the writer thread.
+     *
+     * @param base the path of the log, to which segment numbers are appended
+     * @param fsyncMillis the longest time written records wait to be forced to disk, 0 to force after every write
+     * @throws IOException if the segment can not be created
+     */
+    public WriteAheadLog(Path base, long fsyncMillis) throws IOException {
+        this.base = base;
+        this.fsyncMillis = fsyncMillis;
+        List<Long> segments = segments(base);
+        segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+        snapshotSegment = segment;
+        channel = open(segment);
+        writer = new Thread(this::write, "weather-wal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Logs an airport added.
+     */
+    void newAirport(String iata, double latitude, double longitude) {
+        ByteBuffer record = record(NEW_AIRPORT, iata, 16);
+        record.putDouble(latitude).putDouble(longitude);
+        append(record);
+    }
+
+    /**
+     * Logs an airport deleted.
+     */
+    void deleteAirport(String iata) {
+        append(record(DELETE_AIRPORT, iata, 0));
+    }
+
+    /**
+     * Logs a data point applied at the given update time.
+     */
+    void dataPoint(String iata, DataPointType pointType, DataPoint dp, long updateTime) {
+        ByteBuffer record = record(DATA_POINT, iata, 1 + 8 + 8 + 4 * 4);
+        record.put((byte) pointType.ordinal()).putLong(updateTime).putDouble(dp.getMean())
+                .putInt(dp.getFirst()).putInt(dp.getSecond()).putInt(dp.getThird()).putInt(dp.getCount());
+        append(record);
+    }
+
+    /**
+     * starts a record, leaving room for its header and the given number of bytes after the iata code
+     *
+     * @throws IllegalArgumentException if the payload would be longer than replay reads
+     */
+    private static ByteBuffer record(byte type, String iata, int fields) {
+        byte[] code = iata.getBytes(StandardCharsets.UTF_8);
+        if (1 + 2 + code.length + fields > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("iata code too long to log: " + code.length + " bytes");
+        }
+        ByteBuffer record = ByteBuffer.allocate(8 + 1 + 2 + code.length + fields);
+        record.position(8);
+        record.put(type).putShort((short) code.length).put(code);
+        return record;
+    }
+
+    /** completes the record header and queues it for the writer thread */
+    private void append(ByteBuffer record) {
+        if (closed) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, record.position() - 8);
+        record.putInt(0, record.position() - 8).putInt(4, (int) crc.getValue());
+        record.flip();
+        queue.add(record);
+    }
+
+    /** the writer thread: appends queued records in batches and forces them to disk */
+    private void write() {
+        List<ByteBuffer> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                ByteBuffer first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+                synchronized (this) {
+                    if (!batch.isEmpty()) {
+                        ByteBuffer[] buffers = batch.toArray(new ByteBuffer[batch.size()]);
+                        long remaining = 0;
+                        for (ByteBuffer buffer : buffers) {
+                            remaining += buffer.remaining();
+                        }
+                        while (remaining > 0) {
+                            remaining -= channel.write(buffers);
+                        }
+                        dirty = true;
+                    }
+                    if (dirty && System.currentTimeMillis() - lastForce >= fsyncMillis) {
+                        force();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "could not append to write ahead log " + base, e);
+            }
+            batch.clear();
+        }
+    }
+
+    /** guarded by this */
+    private void force() throws IOException {
+        channel.force(false);
+        dirty = false;
+        lastForce = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts a new segment, to be called right before taking a snapshot.
+     *
+     * @throws IOException if the new segment can not be created
+     */
+    public synchronized void rotate() throws IOException {
+        FileChannel next = open(segment + 1);
+        force();
+        channel.close();
+        channel = next;
+        snapshotSegment = segment;
+        segment++;
+    }
+
+    /**
+     * Deletes the segments made redundant by the snapshot taken since the last {@link #rotate()}, to be called once
+     * that snapshot has been written.
+     *
+     * @throws IOException if a segment can not be deleted
+     */
+    public void compact() throws IOException {
+        long keep;
+        synchronized (this) {
+            keep = snapshotSegment;
+        }
+        for (long s : segments(base)) {
+            if (s < keep) {
+                Files.delete(segmentPath(base, s));
+            }
+        }
+    }
+
+    /**
+     * Writes what is queued, forces it to disk and stops the writer thread. Later mutations are not logged.
+     */
+    @Override
+    public void close() throws IOException {
+        // not interrupted, which would close the channel in the middle of a write
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            force();
+            channel.close();
+        }
+    }
+
+    private FileChannel open(long s) throws IOException {
+        return FileChannel.open(segmentPath(base, s), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private static Path segmentPath(Path base, long s) {
+        return base.resolveSibling(base.getFileName() + "." + s);
+    }
+
+    /** @return the numbers of the existing segments, in ascending order */
+    private static List<Long> segments(Path base) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        Path dir = base.toAbsolutePath().getParent();
+        String prefix = base.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path file : files) {
+                try {
+                    segments.add(Long.parseLong(file.getFileName().toString().substring(prefix.length())));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Applies the logged mutations of every segment to {@link AirportService}, in order. To be called at startup
+     * after restoring the latest snapshot, and before mutations are logged again.
+     *
+     * @param base the path of the log
+     * @return the number of mutations replayed
+     * @throws IOException if a segment can not be read
+     */
+    public static int replay(Path base) throws IOException {
+        int replayed = 0;
+        for (long s : segments(base)) {
+            Path file = segmentPath(base, s);
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= 8) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 3 || length > MAX_PAYLOAD || length > buffer.remaining()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.array(), buffer.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice();
+                payload.limit(length);
+                buffer.position(buffer.position() + length);
+                try {
+                    apply(payload);
+                    replayed++;
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "skipping unreadable record in " + file, e);
+                }
+            }
+            if (buffer.hasRemaining()) {
+                LOGGER.warning("ignoring " + buffer.remaining() + " bytes at the end of " + file);
+            }
+        }
+        return replayed;
+    }
+
+    private static void apply(ByteBuffer payload) {
+        byte type = payload.get();
+        byte[] code = new byte[payload.getShort() & 0xffff];
+        payload.get(code);
+        String iata = new String(code, StandardCharsets.UTF_8);
+        switch (type) {
+            case NEW_AIRPORT:
+                AirportData ad = new AirportData();
+                ad.setIata(iata);
+                ad.setLatitude(payload.getDouble());
+                ad.setLongitude(payload.getDouble());
+                // a duplicate is expected when the snapshot replayed over already holds the airport
+                if (AirportService.newAirports(Collections.singletonList(ad)).get(0) == AirportStatus.MALFORMED) {
+                    LOGGER.warning("skipping invalid airport " + iata + " at " + ad.getLatitude() + ", "
+                            + ad.getLongitude());
+                }
+                break;
+            case DELETE_AIRPORT:
+                AirportService.deleteAirportByCode(iata);
+                break;
+            case DATA_POINT:
+                DataPointType pointType = TYPES[payload.get()];
+                long updateTime = payload.getLong();
+                DataPoint dp = new DataPoint.Builder().withMean(payload.getDouble()).withFirst(payload.getInt())
+                        .withSecond(payload.getInt()).withThird(payload.getInt()).withCount(payload.getInt()).build();
+                AirportService.replayDataPoint(iata, pointType, dp, updateTime);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown record type " + type);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Logs requests to an access log and reads the files back.
+ * @author daniel
+ *
+ */
+public class AccessLogTest {
+
+    private Path dir;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("access");
+        file = dir.resolve("access.log");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        WeatherMetrics.setAccessLog(null);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private List<String> lines(Path f) throws Exception {
+        return Files.exists(f) ? Files.readAllLines(f, StandardCharsets.UTF_8) : new ArrayList<>();
+    }
+
+    /**
+     * Asserts the requests timed by a server are written once the log is closed.
+     * @throws Exception
+     */
+    @Test
+    public void testServer() throws Exception {
+        AirportService.getInstance().init();
+        AccessLog log = new AccessLog(file, 16, AccessLog.DEFAULT_MAX_BYTES, 1, 1);
+        WeatherMetrics.setAccessLog(log);
+        String baseUri = "http://localhost:9191";
+        HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(baseUri + "/"),
+                new ResourceConfig(RestWeatherQueryEndpoint.class, AtmosphericInformationWriter.class), false);
+        server.getServerConfiguration().getMonitoringConfig().getWebServerConfig()
+                .addProbes(new WeatherMetrics.Probe());
+        server.start();
+        try {
+            WeatherClient client = new WeatherClient(baseUri);
+            assertEquals(200, client.weather("BOS", "0"));
+            assertEquals(404, client.weather("BOS", "0/extra"));
+        } finally {
+            server.shutdownNow();
+        }
+        log.close();
+
+        List<String> lines = lines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).matches("\\S+Z GET /query/weather/BOS/0 200 \\d+\\.\\d{3}"));
+        assertTrue(lines.get(1), lines.get(1).contains(" GET /query/weather/BOS/0/extra 404 "));
+    }
+
+    /**
+     * Asserts successful requests are sampled out while errors are kept, and the file is rotated, keeping only
+     * the given number of rotated files.
+     * @throws Exception
+     */
+    @Test
+    public void testSampleAndRotate() throws Exception {
+        AccessLog log = new AccessLog(file, 1024, 100, 2, 0);
+        for (int i = 0; i < 10; i++) {
+            log.log("GET", "/query/weather/A" + i + "/0", null, 200, 1500000);
+            log.log("POST", "/collect/weather/A" + i + "/wind", "x=1", 500, 1500);
+            // one line per write, so the file is rotated every other line
+            while (log.written() <= i) {
+                Thread.sleep(1);
+            }
+        }
+        log.close();
+        assertEquals(10, log.written());
+        assertEquals(0, log.dropped());
+
+        List<String> lines = new ArrayList<>();
+        lines.addAll(lines(dir.resolve("access.log.2")));
+        lines.addAll(lines(dir.resolve("access.log.1")));
+        lines.addAll(lines(file));
+        assertFalse(Files.exists(dir.resolve("access.log.3")));
+        // rotated after the 10th line, leaving the 7th to 10th in the two files kept
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0), lines.get(0).contains("/A6/"));
+        assertTrue(lines.get(3), lines.get(3).contains("/A9/"));
+        for (String line : lines) {
+            assertTrue(line, line.matches("\\S+ POST /collect/weather/A\\d/wind\\?x=1 500 0\\.001"));
+        }
+    }
+
+    /**
+     * Blocks rotation with a directory in place of the rotated file, and asserts every request is still written to
+     * the current file.
+     * @throws Exception
+     */
+    @Test
+    public void testRotateFailure() throws Exception {
+        Path blocker = Files.createDirectory(dir.resolve("access.log.1"));
+        Path child = Files.createFile(blocker.resolve("child"));
+        try {
+            AccessLog log = new AccessLog(file, 1024, 100, 1, 1);
+            for (int i = 0; i < 10; i++) {
+                log.log("POST", "/collect/weather/A" + i + "/wind", "x=1", 500, 1500);
+                while (log.written() <= i) {
+                    Thread.sleep(1);
+                }
+            }
+            log.close();
+            assertEquals(10, log.written());
+            assertEquals(0, log.dropped());
+            assertEquals(10, lines(file).size());
+        } finally {
+            Files.delete(child);
+            Files.delete(blocker);
+        }
+    }
+
+    /**
+     * Asserts every request is either written or counted as dropped when the ring overflows.
+     * @throws Exception
+     */
+    @Test
+    public void testDropped() throws Exception {
+        AccessLog log = new AccessLog(file, 4, AccessLog.DEFAULT_MAX_BYTES, 1, 1);
+        for (int i = 0; i < 10000; i++) {
+            log.log("GET", "/query/ping", null, 200, 1000);
+        }
+        log.close();
+        assertEquals(10000, log.written() + log.dropped());
+        assertEquals(log.written(), lines(file).size());
+    }
+}
@@ -0,0 +1,135 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the airport csv parser against quoting edge cases and the bundled airports file.
+ * @author daniel
+ *
+ */
+public class AirportCsvParserTest {
+
+    /**
+     * Asserts quoted fields may hold commas, doubled quotes, line breaks and non ascii text.
+     * @throws Exception
+     */
+    @Test
+    public void testQuotedFields() throws Exception {
+        AirportCsvParser parser = parse(
+                "1,\"Charles de Gaulle, Roissy\",\"Paris\",\"France\",\"CDG\",\"LFPG\",49.012779,2.55,392,1,\"E\"\r\n"
+                + "2,\"The \"\"Big\"\" One\nLine two\",\"Z\u00fcrich\",,\"ZRH\",\"\",\"47.464722\",8.549167\n"
+                + "\n"
+                + "3,\"Short\",\"X\"");
+
+        assertTrue(parser.next());
+        assertEquals(11, parser.fields());
+        assertEquals("Charles de Gaulle, Roissy", parser.field(1));
+        assertEquals("CDG", parser.field(AirportCsvParser.IATA));
+        assertEquals(49.012779, parser.number(AirportCsvParser.LATITUDE), 0);
+        assertEquals(2.55, parser.number(AirportCsvParser.LONGITUDE), 0);
+
+        assertTrue(parser.next());
+        assertEquals(8, parser.fields());
+        assertEquals("The \"Big\" One\nLine two", parser.field(1));
+        assertEquals("Z\u00fcrich", parser.field(2));
+        assertTrue(parser.isEmpty(3));
+        assertTrue(parser.isEmpty(5));
+        assertEquals("ZRH", parser.append(AirportCsvParser.IATA, new StringBuilder()).toString());
+        assertEquals(47.464722, parser.number(AirportCsvParser.LATITUDE), 0);
+
+        assertTrue(parser.next());
+        assertEquals(1, parser.fields());
+        assertTrue(parser.isEmpty(0));
+
+        assertTrue(parser.next());
+        assertEquals(3, parser.fields());
+        assertEquals("X", parser.field(2));
+        assertTrue(parser.isEmpty(AirportCsvParser.IATA));
+        assertFalse(parser.next());
+        assertEquals(4, parser.record());
+    }
+
+    /**
+     * Asserts an unterminated quoted field is rejected.
+     * @throws Exception
+     */
+    @Test
+    public void testUnterminatedQuote() throws Exception {
+        AirportCsvParser parser = parse("1,\"open\n2,3");
+        try {
+            parser.next();
+            fail("unterminated quote was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Asserts random coordinates are converted like {@link Double#parseDouble(String)} converts them.
+     * @throws Exception
+     */
+    @Test
+    public void testNumbers() throws Exception {
+        Random random = new Random(7);
+        StringBuilder csv = new StringBuilder();
+        String[] values = new String[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 100 == 0 ? "-1.5e-3" : Double.toString(random.nextDouble() * 360 - 180);
+            csv.append(",,,,,,,").append(values[i]).append('\n');
+        }
+        AirportCsvParser parser = parse(csv.toString());
+        for (String value : values) {
+            assertTrue(parser.next());
+            assertEquals(Double.parseDouble(value), parser.number(AirportCsvParser.LONGITUDE), 0);
+        }
+        parser = parse(",,,,,,\\N,");
+        parser.next();
+        try {
+            parser.number(AirportCsvParser.LATITUDE);
+            fail("\\N was converted");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Asserts the memory mapped bundled airports file reads the same fields as splitting its lines.
+     * @throws Exception
+     */
+    @Test
+    public void testMappedFile() throws Exception {
+        Path file = Files.createTempFile("airports", ".dat");
+        try {
+            Files.copy(getClass().getResourceAsStream("/airports.dat"), file,
+                    StandardCopyOption.REPLACE_EXISTING);
+            AirportCsvParser parser = AirportCsvParser.map(file);
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(",");
+                assertTrue(parser.next());
+                assertEquals(AirportLoader.removeQuoationMarks(fields[4]), parser.field(AirportCsvParser.IATA));
+                assertEquals(Double.parseDouble(fields[6]), parser.number(AirportCsvParser.LATITUDE), 0);
+                assertEquals(Double.parseDouble(fields[7]), parser.number(AirportCsvParser.LONGITUDE), 0);
+            }
+            assertFalse(parser.next());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static AirportCsvParser parse(String csv) throws IOException {
+        return AirportCsvParser.read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+}
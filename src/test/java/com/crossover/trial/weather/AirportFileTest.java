@@ -0,0 +1,98 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Loads airport files in csv and snapshot format straight into the service.
+ * @author daniel
+ *
+ */
+public class AirportFileTest {
+
+    private Path csv;
+
+    private Path snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        AirportService.getInstance().init();
+        csv = Files.createTempFile("airports", ".dat");
+        snapshot = Files.createTempFile("airports", ".bin");
+        Files.copy(getClass().getResourceAsStream("/airports.dat"), csv, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.delete(csv);
+        Files.delete(snapshot);
+    }
+
+    /**
+     * Asserts the bundled csv file is loaded, skipping the airports already known.
+     * @throws Exception
+     */
+    @Test
+    public void testLoadCsv() throws Exception {
+        List<AirportStatus> statuses = AirportService.newAirports(AirportFile.read(csv));
+        assertEquals(5, Collections.frequency(statuses, AirportStatus.OK));
+        assertEquals(5, Collections.frequency(statuses, AirportStatus.DUPLICATE));
+        assertEquals(10, AirportService.airportData.size());
+        assertEquals(-0.461389, AirportService.findAirportData("LHR").getLongitude(), 0);
+        assertEquals(4, AirportService.findAirportsWithinRadius(AirportService.findAirportData("LHR"), 100).size());
+    }
+
+    /**
+     * Asserts a snapshot reads back the airports it was written from.
+     * @throws Exception
+     */
+    @Test
+    public void testSnapshot() throws Exception {
+        List<AirportData> airports = AirportFile.read(csv);
+        try (OutputStream out = Files.newOutputStream(snapshot)) {
+            AirportFile.writeSnapshot(airports, out);
+        }
+        List<AirportData> read = AirportFile.read(snapshot);
+        assertEquals(airports.size(), read.size());
+        for (int i = 0; i < airports.size(); i++) {
+            assertEquals(airports.get(i).toString(), read.get(i).toString());
+        }
+
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 3));
+        try {
+            AirportFile.read(snapshot);
+            fail("truncated snapshot was read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Asserts short records and invalid coordinates are reported as malformed.
+     * @throws Exception
+     */
+    @Test
+    public void testMalformedCsv() throws Exception {
+        Files.write(csv, ("1,\"A\",\"B\",\"C\",\"MDE\",\"SKRG\",6.164536,-75.423119\n\n2,\"Short\"\n"
+                + "3,\"A\",\"B\",\"C\",\"XXX\",\"\",\\N,1\n").getBytes(StandardCharsets.UTF_8));
+        List<AirportStatus> statuses = AirportService.newAirports(AirportFile.read(csv));
+        assertEquals(Arrays.asList(AirportStatus.OK, AirportStatus.MALFORMED, AirportStatus.MALFORMED), statuses);
+        assertNull(AirportService.findAirportData("XXX"));
+    }
+}
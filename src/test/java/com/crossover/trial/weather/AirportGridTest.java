@@ -0,0 +1,161 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks radius queries on the airport grid against a brute force scan.
+ * @author daniel
+ *
+ */
+public class AirportGridTest {
+
+	private AirportGrid _grid;
+
+	private List<AirportData> _airports;
+
+	/**
+	 * Indexes a fixed random set of airports, plus a few near the poles and the antimeridian.
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		_grid = new AirportGrid();
+		_airports = new ArrayList<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			add("R" + i, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+		}
+		add("NP1", 89.9, 10);
+		add("NP2", 89.5, -170);
+		add("AM1", 10, 179.9);
+		add("AM2", 10, -179.9);
+		add("AM3", 10, 180);
+	}
+
+	/**
+	 * Asserts the grid returns exactly the airports a full scan finds, for several radii.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMatchesFullScan() throws Exception {
+		double[] radii = {0, 10, 150, 1000, 5000, 20000};
+		for (AirportData center : _airports.subList(_airports.size() - 60, _airports.size())) {
+			for (double radius : radii) {
+				assertEquals(center.getIata() + " " + radius, fullScan(center, radius),
+						new HashSet<>(_grid.withinRadius(center, radius)));
+			}
+		}
+	}
+
+	/**
+	 * Asserts airports across the antimeridian are found.
+	 * @throws Exception
+	 */
+	@Test
+	public void testAntimeridian() throws Exception {
+		assertEquals(3, _grid.withinRadius(find("AM1"), 50).size());
+	}
+
+	/**
+	 * Asserts removed airports are no longer returned.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRemove() throws Exception {
+		_grid.remove(find("AM2"));
+		assertEquals(2, _grid.withinRadius(find("AM1"), 50).size());
+	}
+
+	/**
+	 * Asserts the nearest airports are those a full scan finds closest, with and without a filter, near the poles
+	 * and across the antimeridian included.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNearestMatchesFullScan() throws Exception {
+		Predicate<AirportData> even = ad -> ad.getIata().hashCode() % 2 == 0;
+		for (AirportData center : _airports.subList(_airports.size() - 60, _airports.size())) {
+			for (int k : new int[] {1, 5, 50}) {
+				assertEquals(center.getIata() + " " + k, nearestByScan(center, k, ad -> true),
+						distances(_grid.nearest(center, k, ad -> true)));
+				assertEquals(center.getIata() + " " + k, nearestByScan(center, k, even),
+						distances(_grid.nearest(center, k, even)));
+			}
+		}
+		assertEquals(find("AM1"), _grid.nearest(find("AM1"), 1, ad -> true).get(0).getKey());
+		assertEquals(find("AM3"), _grid.nearest(find("AM1"), 3, ad -> true).get(1).getKey());
+		assertEquals(find("AM2"), _grid.nearest(find("AM1"), 3, ad -> true).get(2).getKey());
+	}
+
+	/**
+	 * Asserts every airport is returned, farthest last, when fewer than k pass the filter.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNearestFewerThanK() throws Exception {
+		List<Map.Entry<AirportData, Double>> nearest = _grid.nearest(find("NP1"), 10,
+				ad -> ad.getIata().startsWith("AM") || ad.getIata().startsWith("NP"));
+		assertEquals(5, nearest.size());
+		assertEquals("NP1", nearest.get(0).getKey().getIata());
+		assertEquals("NP2", nearest.get(1).getKey().getIata());
+	}
+
+	private List<Double> nearestByScan(AirportData center, int k, Predicate<AirportData> filter) {
+		List<Double> retval = new ArrayList<>();
+		for (AirportData ad : _airports) {
+			if (filter.test(ad)) {
+				retval.add(AirportService.calculateDistance(center, ad));
+			}
+		}
+		Collections.sort(retval);
+		return retval.subList(0, Math.min(k, retval.size()));
+	}
+
+	private static List<Double> distances(List<Map.Entry<AirportData, Double>> nearest) {
+		List<Double> retval = new ArrayList<>();
+		for (Map.Entry<AirportData, Double> e : nearest) {
+			retval.add(e.getValue());
+		}
+		return retval;
+	}
+
+	private Set<AirportData> fullScan(AirportData center, double radius) {
+		Set<AirportData> retval = new HashSet<>();
+		for (AirportData ad : _airports) {
+			if (AirportService.calculateDistance(center, ad) <= radius) {
+				retval.add(ad);
+			}
+		}
+		return retval;
+	}
+
+	private AirportData find(String iata) {
+		for (AirportData ad : _airports) {
+			if (ad.getIata().equals(iata)) {
+				return ad;
+			}
+		}
+		return null;
+	}
+
+	private void add(String iata, double latitude, double longitude) {
+		AirportData ad = new AirportData();
+		ad.setIata(iata);
+		ad.setLatitude(latitude);
+		ad.setLongitude(longitude);
+		_airports.add(ad);
+		_grid.add(ad);
+	}
+}
@@ -0,0 +1,130 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Uploads the bundled airports to a local server.
+ * @author daniel
+ *
+ */
+public class AirportLoaderTest {
+
+    private static final String BASE_URI = "http://localhost:9191";
+
+    private HttpServer server;
+
+    /**
+     * Starts a server holding the five hard coded airports.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        AirportService.getInstance().init();
+        server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI + "/"),
+                new ResourceConfig(RestWeatherCollectorEndpoint.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdownNow();
+    }
+
+    /**
+     * Asserts the new airports are added one request each, and the airports already known are reported as
+     * duplicates without retrying.
+     * @throws Exception
+     */
+    @Test
+    public void testUpload() throws Exception {
+        AirportLoader.Report report;
+        try (InputStream in = getClass().getResourceAsStream("/airports.dat");
+                AirportLoader loader = new AirportLoader(BASE_URI, 4, 1, 0)) {
+            report = loader.upload(in);
+        }
+        assertEquals(5, report.getSent());
+        assertEquals(5, report.getDuplicates());
+        assertEquals(0, report.getFailed());
+        assertEquals(0, report.getRetried());
+        assertEquals(10, AirportService.airportData.size());
+        assertNotNull(AirportService.findAirportData("LHR"));
+        assertEquals(0.235, AirportService.findAirportData("STN").getLongitude(), 0);
+    }
+
+    /**
+     * Asserts the new airports are added in chunks, and the airports already known are reported as duplicates
+     * without retrying.
+     * @throws Exception
+     */
+    @Test
+    public void testUploadChunks() throws Exception {
+        AirportLoader.Report report;
+        try (InputStream in = getClass().getResourceAsStream("/airports.dat");
+                AirportLoader loader = new AirportLoader(BASE_URI, 2, 1, 3)) {
+            report = loader.upload(in);
+        }
+        assertEquals(5, report.getSent());
+        assertEquals(5, report.getDuplicates());
+        assertEquals(0, report.getFailed());
+        assertEquals(0, report.getRetried());
+        assertEquals(10, AirportService.airportData.size());
+        assertEquals(51.885, AirportService.findAirportData("STN").getLatitude(), 0);
+    }
+
+    /**
+     * Answers the first bulk registrations with 503 Service Unavailable, then registers as usual.
+     */
+    @Path("/collect")
+    public static class UnavailableEndpoint extends RestWeatherCollectorEndpoint {
+
+        static final AtomicInteger unavailable = new AtomicInteger();
+
+        @Override
+        public Response addAirports(InputStream airportsCsv) {
+            if (unavailable.getAndDecrement() > 0) {
+                return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+            }
+            return super.addAirports(airportsCsv);
+        }
+    }
+
+    /**
+     * Asserts a chunk answered 503 is sent again after a growing backoff, and then registered.
+     * @throws Exception
+     */
+    @Test
+    public void testRetryBackoff() throws Exception {
+        server.shutdownNow();
+        server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI + "/"),
+                new ResourceConfig(UnavailableEndpoint.class));
+        UnavailableEndpoint.unavailable.set(2);
+        AirportLoader.Report report;
+        long start = System.nanoTime();
+        try (InputStream in = getClass().getResourceAsStream("/airports.dat");
+                AirportLoader loader = new AirportLoader(BASE_URI, 1, 3, 1000, 100)) {
+            report = loader.upload(in);
+        }
+        // at least half of the 100 ms then 200 ms backoffs
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(5, report.getSent());
+        assertEquals(5, report.getDuplicates());
+        assertEquals(2, report.getRetried());
+        assertEquals(0, report.getFailed());
+    }
+}
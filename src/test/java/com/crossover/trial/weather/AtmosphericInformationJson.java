@@ -0,0 +1,33 @@
+package com.crossover.trial.weather;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Renders weather query results as the server writes them, with {@link AtmosphericInformationWriter}, so tests can
+ * compare responses.
+ * @author daniel
+ *
+ */
+final class AtmosphericInformationJson {
+
+    private AtmosphericInformationJson() {
+    }
+
+    /**
+     * @return the json body of a weather query
+     */
+    static String weather(WeatherQueryEndpoint query, String iata, String radius) throws IOException {
+        return write((AtmosphericInformationList) query.weather(iata, radius).getEntity());
+    }
+
+    /**
+     * @return the json the server writes for a list of atmospheric information
+     */
+    static String write(AtmosphericInformationList ais) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AtmosphericInformationWriter.write(ais, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
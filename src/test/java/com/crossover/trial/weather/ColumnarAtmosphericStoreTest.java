@@ -0,0 +1,112 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Stores readings in the columnar engine, and compares them with the snapshot engine.
+ * @author daniel
+ *
+ */
+public class ColumnarAtmosphericStoreTest {
+
+    private ColumnarAtmosphericStore columnar = new ColumnarAtmosphericStore();
+
+    private SnapshotAtmosphericStore snapshot = new SnapshotAtmosphericStore();
+
+    /**
+     * Asserts both engines give the same readings, update times and JSON after the same updates.
+     * @throws Exception
+     */
+    @Test
+    public void testSameAsSnapshot() throws Exception {
+        AirportData bos = airport("BOS");
+        AirportData jfk = airport("JFK");
+        for (AtmosphericStore store : new AtmosphericStore[] {columnar, snapshot}) {
+            store.add(bos);
+            store.add(jfk);
+            update(store, bos, DataPointType.WIND, 20.5, 1000);
+            update(store, bos, DataPointType.TEMPERATURE, -12.25, 2000);
+            update(store, bos, DataPointType.WIND, 7, 3000);
+        }
+        for (AirportData ad : new AirportData[] {bos, jfk}) {
+            AtmosphericInformation expected = snapshot.get(ad);
+            AtmosphericInformation actual = columnar.get(ad);
+            assertEquals(expected.getLastUpdateTime(), actual.getLastUpdateTime());
+            assertEquals(expected.hasData(), actual.hasData());
+            assertArrayEquals(expected.toJson(), actual.toJson());
+        }
+        assertEquals(3000, columnar.get(bos).getLastUpdateTime());
+        assertEquals(7, columnar.get(bos).getWind().getMean(), 0);
+        assertNull(columnar.get(bos).getHumidity());
+    }
+
+    /**
+     * Asserts a removed airport is no longer held, even once another airport reuses its slot.
+     * @throws Exception
+     */
+    @Test
+    public void testRemove() throws Exception {
+        AirportData bos = airport("BOS");
+        columnar.add(bos);
+        update(columnar, bos, DataPointType.HUMIDITY, 50, 1000);
+        assertEquals(1000, columnar.remove(bos));
+        assertEquals(-1, columnar.remove(bos));
+        assertNull(columnar.get(bos));
+
+        AirportData jfk = airport("JFK");
+        columnar.add(jfk);
+        assertEquals(bos.slot, jfk.slot);
+        assertFalse(update(columnar, bos, DataPointType.WIND, 10, 2000));
+        assertNull(columnar.get(bos));
+        assertFalse(columnar.get(jfk).hasData());
+        assertNull(columnar.get(airport("LGA")));
+    }
+
+    /**
+     * Asserts readings survive adding airports across several pages, and are gone after clearing.
+     * @throws Exception
+     */
+    @Test
+    public void testGrowAndClear() throws Exception {
+        List<AirportData> airports = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            AirportData ad = airport("A" + i);
+            columnar.add(ad);
+            update(columnar, ad, DataPointType.PRESSURE, i, i + 1);
+            airports.add(ad);
+        }
+        for (int i = 0; i < airports.size(); i++) {
+            assertEquals(i, columnar.get(airports.get(i)).getPressure().getMean(), 0);
+            assertEquals(i + 1, columnar.get(airports.get(i)).getLastUpdateTime());
+        }
+        columnar.clear();
+        assertNull(columnar.get(airports.get(0)));
+        assertNull(columnar.get(airports.get(4999)));
+        AirportData bos = airport("BOS");
+        columnar.add(bos);
+        assertEquals(0, bos.slot);
+        assertTrue(update(columnar, bos, DataPointType.WIND, 1, 1));
+    }
+
+    private static boolean update(AtmosphericStore store, AirportData ad, DataPointType type, double mean,
+                                  long time) {
+        DataPoint dp = new DataPoint.Builder()
+                .withCount(10).withFirst(10).withMean(mean).withThird(30).withSecond(22).build();
+        return store.update(ad, new DataPointType[] {type}, new DataPoint[] {dp}, time, previous -> { });
+    }
+
+    private static AirportData airport(String iata) {
+        AirportData ad = new AirportData();
+        ad.setIata(iata);
+        return ad;
+    }
+}
@@ -0,0 +1,82 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+/**
+ * Checks the streaming data point parser reads what gson reads.
+ * @author daniel
+ *
+ */
+public class DataPointParserTest {
+
+    private Gson _gson = new Gson();
+
+    /**
+     * Asserts random data points serialized by gson are parsed back unchanged.
+     * @throws Exception
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            DataPoint dp = new DataPoint.Builder()
+                    .withFirst(random.nextInt()).withSecond(random.nextInt(200) - 100)
+                    .withMean(i % 2 == 0 ? random.nextDouble() * 1000 - 500 : random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20))
+                    .withThird(random.nextInt()).withCount(random.nextInt(Integer.MAX_VALUE)).build();
+            assertEquals(dp, parse(_gson.toJson(dp)));
+        }
+    }
+
+    /**
+     * Asserts whitespace, key order, unknown keys, nulls and escapes are handled like gson does.
+     * @throws Exception
+     */
+    @Test
+    public void testSyntax() throws Exception {
+        String[] jsons = {
+                "{}",
+                " {\n\t\"count\" : 4 , \"mean\":-2.5E1,\"first\":10.0 }\n",
+                "{\"mean\":20,\"site\":{\"name\":\"a \\\"b\\\" }\",\"tags\":[1,[2,{}],\"]\"]},\"third\":30}",
+                "{\"mean\":null,\"second\":22,\"other\":true,\"m\\u0065an\":1.5}",
+                "{\"mean\":0.1,\"first\":-0,\"third\":1e2,\"count\":2147483647}",
+                "{\"mean\":\"5\",\"first\":\"7\",\"second\":\"1e1\",\"count\":\"\\u0033\"}",
+        };
+        for (String json : jsons) {
+            assertEquals(json, _gson.fromJson(json, DataPoint.class), parse(json));
+        }
+    }
+
+    /**
+     * Asserts malformed bodies are rejected.
+     * @throws Exception
+     */
+    @Test
+    public void testMalformed() throws Exception {
+        String[] jsons = {"", "[]", "{", "{\"mean\":}", "{\"mean\":\"abc\"}", "{\"first\":1.5}",
+                "{\"mean\":1,}", "{\"mean\":1} {}", "{\"x\":,\"mean\":1}", "{\"mean\":1.2.3}", "{\"x\":\"abc}",
+                "{\"mean\":1e400}", "{\"mean\":-1e400}", "{\"mean\":\"Infinity\"}", "{\"mean\":\"NaN\"}",
+                "{\"first\":\"1.5\"}", "{\"mean\":\"20}"};
+        for (String json : jsons) {
+            try {
+                parse(json);
+                fail(json + " was accepted");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private DataPoint parse(String json) throws IOException {
+        return DataPointParser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,111 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks distances computed from unit vectors against the textbook haversine formula.
+ * @author daniel
+ *
+ */
+public class GreatCircleTest {
+
+    /**
+     * Asserts distances agree to the millimetre with the Vincenty form of the spherical distance, which is well
+     * conditioned everywhere, and with the haversine formula calculateDistance used before away from antipodes, for
+     * random pairs and for close, antipodal and polar ones.
+     * @throws Exception
+     */
+    @Test
+    public void testMatchesHaversine() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            AirportData a = airport(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            AirportData b = i % 2 == 0
+                    ? airport(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180)
+                    : airport(a.getLatitude() + random.nextGaussian() * 0.01,
+                            a.getLongitude() + random.nextGaussian() * 0.01);
+            double distance = AirportService.calculateDistance(a, b);
+            assertEquals(vincenty(a, b), distance, 1e-6);
+            if (distance < 19000) {
+                assertEquals(haversine(a, b), distance, 1e-6);
+            }
+        }
+        assertEquals(Math.PI * AirportService.R, AirportService.calculateDistance(airport(10, 20), airport(-10, -160)),
+                1e-6);
+        assertEquals(0, AirportService.calculateDistance(airport(90, 0), airport(90, 120)), 1e-6);
+        assertEquals(0, AirportService.calculateDistance(airport(10, 180), airport(10, -180)), 1e-6);
+        assertEquals(0, AirportService.calculateDistance(new AirportData(), airport(0, 0)), 0);
+    }
+
+    /**
+     * Asserts the squared chord of a radius selects the same airports as comparing distances, and every airport
+     * once the radius reaches the antipodes.
+     * @throws Exception
+     */
+    @Test
+    public void testMaxChord() throws Exception {
+        Random random = new Random(11);
+        for (int i = 0; i < 100000; i++) {
+            AirportData a = airport(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            AirportData b = airport(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            double radius = random.nextDouble() * 20000;
+            double distance = AirportService.calculateDistance(a, b);
+            if (Math.abs(distance - radius) > 1e-6) {
+                assertEquals(distance <= radius,
+                        GreatCircle.chord2(a.x, a.y, a.z, b.x, b.y, b.z) <= GreatCircle.maxChord2(radius));
+            }
+        }
+        assertTrue(GreatCircle.maxChord2(Math.PI * AirportService.R) > 4);
+        assertEquals(0, GreatCircle.maxChord2(0), 0);
+    }
+
+    /**
+     * Asserts the selection kernel returns the indexes within the chord, in order.
+     * @throws Exception
+     */
+    @Test
+    public void testWithin() throws Exception {
+        double[] xyz = new double[12];
+        GreatCircle.unitVector(0, 0, xyz, 0);
+        GreatCircle.unitVector(0, 1, xyz, 3);
+        GreatCircle.unitVector(0, 2, xyz, 6);
+        GreatCircle.unitVector(0, 0.5, xyz, 9);
+        int[] selected = new int[4];
+        int n = GreatCircle.within(xyz, 4, xyz[0], xyz[1], xyz[2], GreatCircle.maxChord2(120), selected);
+        assertEquals(3, n);
+        assertEquals(0, selected[0]);
+        assertEquals(1, selected[1]);
+        assertEquals(3, selected[2]);
+    }
+
+    private static double vincenty(AirportData ad1, AirportData ad2) {
+        double lat1 = Math.toRadians(ad1.getLatitude());
+        double lat2 = Math.toRadians(ad2.getLatitude());
+        double deltaLon = Math.toRadians(ad2.getLongitude() - ad1.getLongitude());
+        double y = Math.hypot(Math.cos(lat2) * Math.sin(deltaLon),
+                Math.cos(lat1) * Math.sin(lat2) - Math.sin(lat1) * Math.cos(lat2) * Math.cos(deltaLon));
+        double x = Math.sin(lat1) * Math.sin(lat2) + Math.cos(lat1) * Math.cos(lat2) * Math.cos(deltaLon);
+        return AirportService.R * Math.atan2(y, x);
+    }
+
+    /** the haversine formula, as calculateDistance used to compute it */
+    private static double haversine(AirportData ad1, AirportData ad2) {
+        double deltaLat = Math.toRadians(ad2.getLatitude() - ad1.getLatitude());
+        double deltaLon = Math.toRadians(ad2.getLongitude() - ad1.getLongitude());
+        double a =  Math.pow(Math.sin(deltaLat / 2), 2) + Math.pow(Math.sin(deltaLon / 2), 2)
+                * Math.cos(Math.toRadians(ad1.getLatitude())) * Math.cos(Math.toRadians(ad2.getLatitude()));
+        return AirportService.R * 2 * Math.asin(Math.sqrt(a));
+    }
+
+    private static AirportData airport(double latitude, double longitude) {
+        AirportData ad = new AirportData();
+        ad.setLatitude(latitude);
+        ad.setLongitude(longitude);
+        return ad;
+    }
+}
@@ -0,0 +1,69 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks latency percentiles against the exact percentiles of the recorded values.
+ * @author daniel
+ *
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Asserts every value falls in a bucket ending at most 1/64 above it, and the buckets follow each other.
+     * @throws Exception
+     */
+    @Test
+    public void testBuckets() throws Exception {
+        for (long value : new long[] {0, 1, 127, 128, 129, 130, 255, 256, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.index(value);
+            long highest = LatencyHistogram.highestValue(index);
+            assertTrue(value + " in bucket ending " + highest, highest >= value && highest - value <= value / 64);
+            if (highest < Long.MAX_VALUE) {
+                assertEquals(index + 1, LatencyHistogram.index(highest + 1));
+            }
+        }
+    }
+
+    /**
+     * Asserts percentiles of skewed random values are within 1/64 of the exact ones.
+     * @throws Exception
+     */
+    @Test
+    public void testPercentiles() throws Exception {
+        Random random = new Random(3);
+        long[] values = new long[100000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 16);
+            histogram.record(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[] {0, 50, 90, 99, 99.9, 100}) {
+            long exact = values[Math.max(0, (int) Math.ceil(percentile / 100 * values.length) - 1)];
+            long reported = histogram.valueAtPercentile(percentile);
+            assertTrue(percentile + ": " + reported + " for " + exact,
+                    reported >= exact && reported - exact <= exact / 64);
+        }
+        assertEquals(values.length, histogram.count());
+        assertEquals(values[values.length - 1], histogram.max());
+        assertEquals((double) sum / values.length, histogram.mean(), 1e-6);
+
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.record(5);
+        merged.add(histogram);
+        assertEquals(values.length + 1, merged.count());
+        assertEquals(histogram.valueAtPercentile(99), merged.valueAtPercentile(99));
+        merged.clear();
+        assertEquals(0, merged.count());
+        assertEquals(0, merged.valueAtPercentile(50));
+    }
+}
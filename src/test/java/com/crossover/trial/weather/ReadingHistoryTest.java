@@ -0,0 +1,103 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Records data points in the history rings and queries time ranges.
+ * @author daniel
+ *
+ */
+public class ReadingHistoryTest {
+
+    private static final long HOUR = 3600000;
+
+    /**
+     * Asserts a full ring keeps its latest entries, and queries only see the range asked for within the retention
+     * period.
+     * @throws Exception
+     */
+    @Test
+    public void testRingAndRange() throws Exception {
+        ReadingHistory history = new ReadingHistory(10, 6 * HOUR, ReadingHistory.DEFAULT_BUDGET);
+        for (int i = 0; i < 25; i++) {
+            history.record("JFK", DataPointType.WIND, dp(i, i), i * 1000L);
+        }
+        List<TimedDataPoint> points = history.query("JFK", DataPointType.WIND, 0, Long.MAX_VALUE, 100, 25000);
+        assertEquals(10, points.size());
+        assertEquals(15000, points.get(0).getTime());
+        assertEquals(24, points.get(9).getMean(), 0);
+        assertEquals(24, points.get(9).getCount());
+        assertEquals(-24, points.get(9).getFirst());
+        assertEquals(24 * 3, points.get(9).getThird());
+
+        assertEquals(3, history.query("JFK", DataPointType.WIND, 20000, 22000, 100, 25000).size());
+        assertEquals(0, history.query("JFK", DataPointType.HUMIDITY, 0, Long.MAX_VALUE, 100, 25000).size());
+        assertEquals(0, history.query("BOS", DataPointType.WIND, 0, Long.MAX_VALUE, 100, 25000).size());
+        // only the entries from 19000 on are within 6 hours of now
+        assertEquals(6, history.query("JFK", DataPointType.WIND, 0, Long.MAX_VALUE, 100, 6 * HOUR + 19000).size());
+    }
+
+    /**
+     * Asserts long ranges are merged into intervals of the same length, weighted by count.
+     * @throws Exception
+     */
+    @Test
+    public void testDownsample() throws Exception {
+        ReadingHistory history = new ReadingHistory(100, 24 * HOUR, ReadingHistory.DEFAULT_BUDGET);
+        for (int i = 0; i < 60; i++) {
+            history.record("JFK", DataPointType.TEMPERATURE, dp(i % 2 == 0 ? 10 : 20, i % 2 == 0 ? 1 : 3),
+                    i * 60000L);
+        }
+        List<TimedDataPoint> points = history.query("JFK", DataPointType.TEMPERATURE, 0, HOUR - 1, 6, HOUR);
+        assertEquals(6, points.size());
+        for (int i = 0; i < 6; i++) {
+            TimedDataPoint p = points.get(i);
+            assertEquals(i * 600000L, p.getTime());
+            assertEquals(17.5, p.getMean(), 1e-9);
+            assertEquals(20, p.getCount());
+        }
+
+        // counts of 0 are averaged evenly, and empty intervals are left out
+        List<TimedDataPoint> merged = ReadingHistory.downsample(Arrays.asList(
+                new TimedDataPoint(0, 10, 1, 2, 3, 0), new TimedDataPoint(10, 20, 3, 4, 5, 0),
+                new TimedDataPoint(99, 7, 7, 7, 7, 1)), 0, 99, 4);
+        assertEquals(2, merged.size());
+        assertEquals(15, merged.get(0).getMean(), 0);
+        assertEquals(2, merged.get(0).getFirst());
+        assertEquals(0, merged.get(0).getCount());
+        assertEquals(75, merged.get(1).getTime());
+        assertEquals(7, merged.get(1).getMean(), 0);
+    }
+
+    /**
+     * Asserts no ring is created beyond the memory budget, and that rings freed by a removed airport can be used
+     * again.
+     * @throws Exception
+     */
+    @Test
+    public void testBudget() throws Exception {
+        // room for two rings of 10 entries of 32 bytes
+        ReadingHistory history = new ReadingHistory(10, HOUR, 640);
+        history.record("JFK", DataPointType.WIND, dp(1, 1), 1);
+        history.record("JFK", DataPointType.HUMIDITY, dp(1, 1), 1);
+        history.record("BOS", DataPointType.WIND, dp(1, 1), 1);
+        history.record("JFK", DataPointType.WIND, dp(2, 1), 2);
+        assertEquals(2, history.query("JFK", DataPointType.WIND, 0, 10, 100, 10).size());
+        assertEquals(0, history.query("BOS", DataPointType.WIND, 0, 10, 100, 10).size());
+
+        history.remove("JFK");
+        history.record("BOS", DataPointType.WIND, dp(1, 1), 3);
+        assertEquals(1, history.query("BOS", DataPointType.WIND, 0, 10, 100, 10).size());
+        assertEquals(0, history.query("JFK", DataPointType.WIND, 0, 10, 100, 10).size());
+    }
+
+    private static DataPoint dp(double mean, int count) {
+        return new DataPoint.Builder().withMean(mean).withCount(count).withFirst(-count).withSecond(count * 2)
+                .withThird(count * 3).build();
+    }
+}
@@ -0,0 +1,52 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks the recently updated airport count follows updates, removals and the passing of time.
+ * @author daniel
+ *
+ */
+public class UpdateWindowTest {
+
+	private static final long DAY = 86400000;
+
+	private static final long NOW = 1000 * DAY;
+
+	/**
+	 * Asserts updates are counted once per airport, and removed airports are no longer counted.
+	 * @throws Exception
+	 */
+	@Test
+	public void testUpdates() throws Exception {
+		UpdateWindow window = new UpdateWindow(DAY);
+		window.moved(0, NOW);
+		window.moved(0, NOW + 10);
+		window.moved(NOW, NOW + 120000);
+		assertEquals(2, window.count(NOW + 120000));
+		window.remove(NOW + 10);
+		assertEquals(1, window.count(NOW + 120000));
+	}
+
+	/**
+	 * Asserts updates older than the window are not counted, and that recycling their bucket
+	 * does not disturb the count.
+	 * @throws Exception
+	 */
+	@Test
+	public void testExpiry() throws Exception {
+		UpdateWindow window = new UpdateWindow(DAY);
+		window.moved(0, NOW);
+		window.moved(0, NOW + DAY / 2);
+		assertEquals(2, window.count(NOW + DAY / 2));
+		assertEquals(1, window.count(NOW + DAY + 60000));
+
+		window.moved(0, NOW + DAY);
+		window.moved(NOW, NOW + DAY + 1);
+		assertEquals(3, window.count(NOW + DAY + 60000));
+		window.add(NOW);
+		assertEquals(3, window.count(NOW + DAY + 60000));
+	}
+}
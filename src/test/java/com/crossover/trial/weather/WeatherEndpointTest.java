@@ -1,8 +1,13 @@
 package com.crossover.trial.weather;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,6 +17,7 @@ import javax.ws.rs.core.Response;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
@@ -159,6 +165,22 @@ public class WeatherEndpointTest {
 		assertEquals(false, airports.contains("JFK"));
     }
     
+    /**
+     * Deletes an existing airport, asserts it can no longer be found, then registers it
+     * again and asserts it is found and listed last.
+     * @throws Exception
+     */
+    @Test
+    public void testDeleteThenCreate() throws Exception {
+    	_update.deleteAirport("BOS");
+    	assertEquals(null, _update.getAirport("BOS").getEntity());
+    	_update.addAirport("BOS", "42.364347", "-71.005181");
+    	assertEquals("BOS", ((AirportData) _update.getAirport("BOS").getEntity()).getIata());
+    	List<String> airports = (List<String>) _update.getAirports().getEntity();
+    	assertEquals(5, airports.size());
+    	assertEquals("BOS", airports.get(4));
+    }
+
     /**
      * Creates a new airport, then queries same airport, and asserts response
      * has input values.
@@ -174,6 +196,47 @@ public class WeatherEndpointTest {
     	
     }
     
+    /**
+     * Adds a batch of airports, and asserts the status of each line and the airports list.
+     * @throws Exception
+     */
+    @Test
+    public void testCreateBatch() throws Exception {
+        String csv = "\"MDE\",6.164536,-75.423119\nBOS,42.364347,-71.005181\n\nBOG,4.701594,-74.146947\n"
+                + "MDE,6.16,-75.42\nCLO,3.543,x\nCTG,10.442,-75.513,0\n,1,1\nADZ,95,-81\n";
+        Response response = _update.addAirports(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(Arrays.asList(AirportStatus.OK, AirportStatus.DUPLICATE, AirportStatus.OK,
+                AirportStatus.DUPLICATE, AirportStatus.MALFORMED, AirportStatus.MALFORMED, AirportStatus.MALFORMED,
+                AirportStatus.MALFORMED), response.getEntity());
+        List<String> airports = (List<String>) _update.getAirports().getEntity();
+        assertEquals(Arrays.asList("BOS", "EWR", "JFK", "LGA", "MMU", "MDE", "BOG"), airports);
+        assertEquals(6.164536, AirportService.findAirportData("MDE").getLatitude(), 0);
+        assertEquals(1, AirportService.findAirportsWithinRadius(AirportService.findAirportData("BOG"), 100).size());
+    }
+
+    /**
+     * Adds airports with bad coordinates or no code one at a time, and asserts each is refused with 400 as the batch
+     * end point refuses them, and that none is listed.
+     * @throws Exception
+     */
+    @Test
+    public void testCreateInvalid() throws Exception {
+        String[][] invalid = {{"ADZ", "95", "-81"}, {"ADZ", "12", "500"}, {"ADZ", "NaN", "0"},
+                {"ADZ", "Infinity", "0"}, {"ADZ", "x", "0"}, {"", "1", "1"}};
+        for (String[] airport : invalid) {
+            assertEquals(Arrays.toString(airport), Response.Status.BAD_REQUEST.getStatusCode(),
+                    _update.addAirport(airport[0], airport[1], airport[2]).getStatus());
+        }
+        assertEquals(Arrays.asList("BOS", "EWR", "JFK", "LGA", "MMU"), _update.getAirports().getEntity());
+        try {
+            AirportService.newAirport("ADZ", 95, -81);
+            fail("out of range latitude accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     /**
      * Creates a new airport, then tries creating it again. Asserts it is contained 
      * only once in airports list.
@@ -219,6 +282,142 @@ public class WeatherEndpointTest {
         assertEquals(ais.get(0).getPrecipitation(), _dp);
     }
     
+    /**
+     * Updates every atmospheric information type of the same airport from concurrent threads,
+     * and asserts no update was lost.
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        String[] types = {"wind", "temperature", "humidity", "pressure", "cloudcover", "precipitation"};
+        Thread[] threads = new Thread[types.length];
+        for (int i = 0; i < types.length; i++) {
+            String type = types[i];
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    _update.updateWeather("JFK", type, _gson.toJson(_dp));
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<AtmosphericInformation> ais = (List<AtmosphericInformation>) _query.weather("JFK", "0").getEntity();
+        assertEquals(ais.get(0).getWind(), _dp);
+        assertEquals(ais.get(0).getTemperature(), _dp);
+        assertEquals(ais.get(0).getHumidity(), _dp);
+        assertEquals(ais.get(0).getPressure(), _dp);
+        assertEquals(ais.get(0).getCloudCover(), _dp);
+        assertEquals(ais.get(0).getPrecipitation(), _dp);
+    }
+
+    /**
+     * Asserts data points out of their type's range, and unknown point types, are rejected
+     * and leave the stored information untouched.
+     * @throws Exception
+     */
+    @Test
+    public void testRejectedUpdates() throws Exception {
+        DataPoint hot = new DataPoint.Builder()
+                .withCount(10).withFirst(10).withMean(100).withThird(30).withSecond(22).build();
+        String[][] rejected = {{"temperature", _gson.toJson(hot)}, {"Humidity", "{\"mean\":100.5}"},
+                {"wind", "{\"mean\":-1}"}, {"visibility", _gson.toJson(_dp)}};
+        for (String[] update : rejected) {
+            try {
+                _update.updateWeather("BOS", update[0], update[1]);
+                fail(update[0] + " " + update[1] + " was accepted");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        _update.updateWeather("BOS", "TEMPERATURE", "{\"mean\":-50}");
+
+        List<AtmosphericInformation> ais = (List<AtmosphericInformation>) _query.weather("BOS", "0").getEntity();
+        assertEquals(-50, ais.get(0).getTemperature().getMean(), 0);
+        assertEquals(null, ais.get(0).getHumidity());
+        assertEquals(ais.get(0).getWind(), _dp);
+    }
+
+    /**
+     * Asserts the String and stream overloads of updateWeather agree: numbers given as strings are read, and
+     * numbers overflowing to infinity are rejected rather than stored and written back as invalid json.
+     * @throws Exception
+     */
+    @Test
+    public void testUpdateOverloadsAgree() throws Exception {
+        String[] rejected = {"{\"mean\":1e400}", "{\"mean\":\"Infinity\"}", "{\"mean\":\"NaN\"}"};
+        for (String json : rejected) {
+            assertEquals(json, 400, _update.updateWeather("JFK", "wind", json).getStatus());
+            assertEquals(json, 400, _update.updateWeather("JFK", "wind",
+                    new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))).getStatus());
+        }
+        assertEquals(0, ((List<?>) _query.weather("JFK", "0").getEntity()).size());
+
+        assertEquals(200, _update.updateWeather("JFK", "wind", "{\"mean\":\"5\"}").getStatus());
+        AirportData jfk = AirportService.findAirportData("JFK");
+        assertEquals(5, AirportService.findAtmosphericInformation(jfk).getWind().getMean(), 0);
+        assertEquals(200, _update.updateWeather("JFK", "pressure",
+                new ByteArrayInputStream("{\"mean\":\"6\"}".getBytes(StandardCharsets.UTF_8))).getStatus());
+        assertEquals(6, AirportService.findAtmosphericInformation(jfk).getPressure().getMean(), 0);
+    }
+
+    /**
+     * Sends a batch of data points for several airports, and asserts the status of each record
+     * and the stored information.
+     * @throws Exception
+     */
+    @Test
+    public void testUpdateBatch() throws Exception {
+        List<DataPointUpdate> updates = Arrays.asList(
+                new DataPointUpdate("JFK", "wind", _dp),
+                new DataPointUpdate("JFK", "humidity", _dp),
+                new DataPointUpdate("XXX", "wind", _dp),
+                new DataPointUpdate("LGA", "visibility", _dp),
+                new DataPointUpdate("LGA", "temperature", new DataPoint.Builder().withMean(150).build()),
+                new DataPointUpdate("LGA", null, _dp),
+                new DataPointUpdate("LGA", "PRESSURE", _dp));
+        Response response = _update.updateWeatherBatch(
+                new ByteArrayInputStream(_gson.toJson(updates).getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(Arrays.asList(UpdateStatus.OK, UpdateStatus.OK, UpdateStatus.UNKNOWN_AIRPORT,
+                UpdateStatus.UNKNOWN_POINT_TYPE, UpdateStatus.OUT_OF_RANGE, UpdateStatus.MALFORMED, UpdateStatus.OK),
+                response.getEntity());
+        List<AtmosphericInformation> ais = (List<AtmosphericInformation>) _query.weather("JFK", "0").getEntity();
+        assertEquals(ais.get(0).getWind(), _dp);
+        assertEquals(ais.get(0).getHumidity(), _dp);
+        ais = (List<AtmosphericInformation>) _query.weather("LGA", "0").getEntity();
+        assertEquals(ais.get(0).getPressure(), _dp);
+        assertEquals(null, ais.get(0).getTemperature());
+
+        response = _update.updateWeatherBatch(
+                new ByteArrayInputStream("[{\"iata\":".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
+    /**
+     * Asserts query results written from the cached JSON of each snapshot match what Jackson writes,
+     * and that an update is visible in the next query.
+     * @throws Exception
+     */
+    @Test
+    public void testCachedJson() throws Exception {
+        _update.updateWeather("JFK", "temperature", "{\"mean\":-12.75,\"first\":-20,\"count\":3}");
+        _update.updateWeather("LGA", "humidity", _gson.toJson(_dp));
+
+        for (String radius : new String[] {"0", "200"}) {
+            List<AtmosphericInformation> ais = (List<AtmosphericInformation>) _query.weather("JFK", radius).getEntity();
+            assertEquals(new ObjectMapper().writeValueAsString(new ArrayList<>(ais)),
+                    AtmosphericInformationJson.write((AtmosphericInformationList) ais));
+        }
+
+        _update.updateWeather("JFK", "wind", _gson.toJson(_dp));
+        List<AtmosphericInformation> ais = (List<AtmosphericInformation>) _query.weather("JFK", "0").getEntity();
+        String json = new String(ais.get(0).toJson(), StandardCharsets.UTF_8);
+        assertEquals(_dp, _gson.fromJson(new JsonParser().parse(json).getAsJsonObject().get("wind"), DataPoint.class));
+    }
+
     /**
      * Tests the only atmospheric information pertains to provided 
      * airport when radius is 0.
@@ -253,6 +452,23 @@ public class WeatherEndpointTest {
     	assertEquals(retval.getRadius_freq()[300], 1);
     }
     
+    /**
+     * Asserts huge radii are counted in the overflow bucket instead of growing the histogram.
+     * @throws Exception
+     */
+    @Test
+    public void testRadiusFreqOverflow() throws Exception{
+    	_query.weather("BOS", "1e9").getEntity();
+    	_query.weather("BOS", "5000").getEntity();
+    	_query.weather("BOS", "-5").getEntity();
+
+    	String pingResult = _query.ping();
+    	PingObject retval = _gson.fromJson(pingResult, PingObject.class);
+    	assertEquals(RadiusHistogram.DEFAULT_MAX_RADIUS + 1, retval.getRadius_freq().length);
+    	assertEquals(2, retval.getRadius_freq()[RadiusHistogram.DEFAULT_MAX_RADIUS]);
+    	assertEquals(2, retval.getRadius_freq()[0]);
+    }
+
     /**
      * Asserts the airport query frequency is being populated
      * correctly.
@@ -265,5 +481,132 @@ public class WeatherEndpointTest {
     	PingObject retval = _gson.fromJson(pingResult, PingObject.class);
     	assertEquals(Double.valueOf(retval.getIata_freq().get("BOS")*100).intValue(), 50);
     }
-    
+
+    /**
+     * Asserts an airport's request count is dropped when it is deleted, so the code starts again from 0 when it is
+     * registered again.
+     * @throws Exception
+     */
+    @Test
+    public void testIataFreqAfterDelete() throws Exception {
+        _query.weather("EWR", "0");
+        _update.deleteAirport("EWR");
+        assertEquals(null, AirportService.requestFrequency.get("EWR"));
+        _update.addAirport("EWR", "40.6925", "-74.168667");
+        PingObject retval = _gson.fromJson(_query.ping(), PingObject.class);
+        assertEquals(0, retval.getIata_freq().get("EWR"), 0);
+    }
+
+    /**
+     * Asserts the nearest airports query returns the closest airports first, filtered by point type and update
+     * time, and rejects invalid parameters.
+     * @throws Exception
+     */
+    @Test
+    public void testNearest() throws Exception {
+        _update.updateWeather("JFK", "wind", _gson.toJson(_dp));
+        AirportService.replayDataPoint("EWR", DataPointType.WIND, _dp, 1000);
+
+        List<NearbyAirport> nearest = (List<NearbyAirport>) _query.nearest("LGA", "2", null, null).getEntity();
+        assertEquals(Arrays.asList("LGA", "JFK"), iatas(nearest));
+        assertEquals(0, nearest.get(0).getDistance(), 0);
+        assertEquals(AirportService.calculateDistance(AirportService.findAirportData("LGA"),
+                AirportService.findAirportData("JFK")), nearest.get(1).getDistance(), 1e-9);
+
+        assertEquals(Arrays.asList("JFK", "EWR", "BOS"),
+                iatas((List<NearbyAirport>) _query.nearest("LGA", "5", "wind", null).getEntity()));
+        assertEquals(Arrays.asList("JFK", "BOS"),
+                iatas((List<NearbyAirport>) _query.nearest("LGA", "5", "WIND", "3600000").getEntity()));
+        assertEquals(0, ((List<?>) _query.nearest("LGA", "5", "humidity", null).getEntity()).size());
+        assertEquals(0, ((List<?>) _query.nearest("XXX", "5", null, null).getEntity()).size());
+        String json = new ObjectMapper().writeValueAsString(_query.nearest("JFK", "1", null, null).getEntity());
+        assertEquals(true, json.contains("\"iata\":\"JFK\""));
+        assertEquals(true, json.contains("\"wind\":{\"mean\":20.0"));
+
+        assertEquals(400, _query.nearest("LGA", "0", null, null).getStatus());
+        assertEquals(400, _query.nearest("LGA", "few", null, null).getStatus());
+        assertEquals(400, _query.nearest("LGA", "5", "snow", null).getStatus());
+        assertEquals(400, _query.nearest("LGA", "5", null, "-1").getStatus());
+    }
+
+    private static List<String> iatas(List<NearbyAirport> airports) {
+        List<String> retval = new ArrayList<>();
+        for (NearbyAirport airport : airports) {
+            retval.add(airport.getIata());
+        }
+        return retval;
+    }
+
+    /**
+     * Asserts the aggregate query summarizes the readings of the NY airports within 200 km of JFK, and rejects
+     * invalid parameters.
+     * @throws Exception
+     */
+    @Test
+    public void testAggregate() throws Exception {
+        _update.updateWeather("JFK", "wind", _gson.toJson(new DataPoint(5, 10, 10, 20, 1)));
+        _update.updateWeather("EWR", "wind", _gson.toJson(new DataPoint(15, 30, 40, 45, 3)));
+        _update.updateWeather("LGA", "wind", _gson.toJson(new DataPoint(25, 40, 30, 50, 0)));
+        _update.updateWeather("LGA", "humidity", _gson.toJson(new DataPoint(50, 60, 55, 70, 2)));
+
+        Response response = _query.aggregate("JFK", "200", null);
+        Map<String, AggregateDataPoint> aggregates = (Map<String, AggregateDataPoint>) response.getEntity();
+        assertEquals(200, response.getStatus());
+        assertEquals(Arrays.asList("wind", "humidity"), new ArrayList<>(aggregates.keySet()));
+        AggregateDataPoint wind = aggregates.get("wind");
+        assertEquals(3, wind.getAirports());
+        assertEquals(4, wind.getCount());
+        assertEquals((10 + 40 * 3) / 4.0, wind.getMean(), 1e-9);
+        assertEquals(10, wind.getMin(), 0);
+        assertEquals(40, wind.getMax(), 0);
+        assertEquals(15, wind.getFirst());
+        assertEquals(30, wind.getSecond());
+        assertEquals(45, wind.getThird());
+        assertEquals(1, aggregates.get("humidity").getAirports());
+
+        wind = ((Map<String, AggregateDataPoint>) _query.aggregate("JFK", "200", "100").getEntity()).get("wind");
+        assertEquals(25, wind.getFirst());
+        assertEquals(50, wind.getThird());
+        wind = ((Map<String, AggregateDataPoint>) _query.aggregate("JFK", "0", "0").getEntity()).get("wind");
+        assertEquals(1, wind.getAirports());
+        assertEquals(5, wind.getFirst());
+        assertEquals(0, ((Map<?, ?>) _query.aggregate("XXX", "200", null).getEntity()).size());
+
+        assertEquals(400, _query.aggregate("JFK", "far", null).getStatus());
+        assertEquals(400, _query.aggregate("JFK", "-1", null).getStatus());
+        assertEquals(400, _query.aggregate("JFK", "200", "101").getStatus());
+    }
+
+    /**
+     * Asserts the history query returns the data points collected for an airport and point type, oldest first,
+     * and rejects invalid parameters.
+     * @throws Exception
+     */
+    @Test
+    public void testHistory() throws Exception {
+        DataPoint windDp = new DataPoint.Builder()
+                .withCount(5).withFirst(1).withMean(3.5).withThird(6).withSecond(4).build();
+        _update.updateWeather("BOS", "wind", _gson.toJson(windDp));
+        _update.updateWeather("BOS", "temperature", _gson.toJson(windDp));
+
+        Response response = _query.history("BOS", "wind", null, null, null);
+        List<TimedDataPoint> history = (List<TimedDataPoint>) response.getEntity();
+        assertEquals(200, response.getStatus());
+        assertEquals(2, history.size());
+        assertEquals(20, history.get(0).getMean(), 0);
+        assertEquals(3.5, history.get(1).getMean(), 0);
+        assertEquals(6, history.get(1).getThird());
+        assertEquals(1, ((List<?>) _query.history("BOS", "temperature", null, null, null).getEntity()).size());
+        assertEquals(0, ((List<?>) _query.history("BOS", "wind", "0", "1000", null).getEntity()).size());
+        assertEquals(0, ((List<?>) _query.history("XXX", "wind", null, null, null).getEntity()).size());
+
+        _update.deleteAirport("BOS");
+        _update.addAirport("BOS", "42.364347", "-71.005181");
+        assertEquals(0, ((List<?>) _query.history("BOS", "wind", null, null, null).getEntity()).size());
+
+        assertEquals(400, _query.history("BOS", "snow", null, null, null).getStatus());
+        assertEquals(400, _query.history("BOS", "wind", "yesterday", null, null).getStatus());
+        assertEquals(400, _query.history("BOS", "wind", null, null, "0").getStatus());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs a short load against a local server.
+ * @author daniel
+ *
+ */
+public class WeatherLoadTest {
+
+    private static final String BASE_URI = "http://localhost:9191";
+
+    private HttpServer server;
+
+    /**
+     * Starts a server holding the five hard coded airports.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        AirportService.getInstance().init();
+        server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI + "/"),
+                new ResourceConfig(RestWeatherCollectorEndpoint.class, RestWeatherQueryEndpoint.class,
+                        AtmosphericInformationWriter.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdownNow();
+    }
+
+    /**
+     * Asserts the generated airports are registered, and the requests scheduled in the measured second are all
+     * sent and reported, split between queries and collected data points.
+     * @throws Exception
+     */
+    @Test
+    public void testRun() throws Exception {
+        WeatherLoad load = new WeatherLoad(BASE_URI, 50, 200, 4, 0.5, "500");
+        assertEquals(0, load.register());
+        assertEquals(55, AirportService.airportData.size());
+        assertNotNull(AirportService.findAirportData("L49"));
+
+        WeatherLoad.Report report = load.run(200, 1000);
+        assertEquals(0, report.getErrors());
+        assertEquals(200, report.getReads() + report.getWrites());
+        assertTrue(report.getReads() > 50 && report.getWrites() > 50);
+        assertTrue(AirportService.countRecentlyUpdated() > 0);
+        assertTrue(report.getLatency(50) > 0 && report.getLatency(50) <= report.getLatency(100));
+        assertTrue(report.toString().contains("collect service"));
+    }
+
+    /**
+     * Asserts a rate leaving a thread less than a nanosecond between requests is refused, as its schedule could
+     * never advance.
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateTooHigh() throws Exception {
+        new WeatherLoad(BASE_URI, 50, 4e9 + 1, 4, 0.5, "500");
+    }
+}
@@ -0,0 +1,126 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks requests, rejected data points and lock waits are counted and rendered.
+ * @author daniel
+ *
+ */
+public class WeatherMetricsTest {
+
+    private static final String BASE_URI = "http://localhost:9191";
+
+    private HttpServer server;
+
+    /**
+     * Starts a server holding the five hard coded airports, with requests timed.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        AirportService.getInstance().init();
+        WeatherMetrics.clear();
+        server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI + "/"),
+                new ResourceConfig(RestWeatherCollectorEndpoint.class, RestWeatherQueryEndpoint.class,
+                        RestMetricsEndpoint.class, AtmosphericInformationWriter.class), false);
+        server.getServerConfiguration().getMonitoringConfig().getWebServerConfig()
+                .addProbes(new WeatherMetrics.Probe());
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdownNow();
+    }
+
+    /**
+     * Asserts requests are counted per end point, method and status class, and rejected data points per point
+     * type and reason.
+     * @throws Exception
+     */
+    @Test
+    public void testRequests() throws Exception {
+        WeatherClient client = new WeatherClient(BASE_URI);
+        String dp = "{\"mean\":5,\"first\":1,\"second\":5,\"third\":9,\"count\":3}";
+        assertEquals(200, client.weather("BOS", "0"));
+        assertEquals(200, client.weather("JFK", "100"));
+        assertEquals(200, client.collect("BOS", "wind", dp));
+        assertEquals(200, client.collect("XXX", "wind", dp));
+        assertEquals(400, client.collect("BOS", "wind", "{\"mean\":"));
+        assertEquals(500, client.collect("BOS", "humidty", dp));
+
+        Response response = ClientBuilder.newClient().target(BASE_URI + "/metrics").request().get();
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getMediaType().toString().startsWith("text/plain"));
+        String metrics = response.readEntity(String.class);
+
+        assertTrue(metrics, metrics.contains(
+                "weather_responses_total{endpoint=\"/query/weather\",method=\"GET\",status=\"2xx\"} 2\n"));
+        assertTrue(metrics, metrics.contains(
+                "weather_responses_total{endpoint=\"/collect/weather\",method=\"POST\",status=\"2xx\"} 2\n"));
+        assertTrue(metrics, metrics.contains(
+                "weather_responses_total{endpoint=\"/collect/weather\",method=\"POST\",status=\"4xx\"} 1\n"));
+        assertTrue(metrics, metrics.contains(
+                "weather_request_duration_seconds_count{endpoint=\"/query/weather\",method=\"GET\"} 2\n"));
+        // the metrics request itself is in flight while it is rendered
+        assertTrue(metrics, metrics.contains(
+                "weather_requests_in_flight{endpoint=\"/metrics\",method=\"GET\"} 1\n"));
+        assertTrue(metrics, metrics.contains(
+                "weather_requests_in_flight{endpoint=\"/query/weather\",method=\"GET\"} 0\n"));
+        assertTrue(metrics, metrics.contains(
+                "weather_ingest_rejections_total{point_type=\"wind\",reason=\"unknown_airport\"} 1\n"));
+        assertTrue(metrics, metrics.contains(
+                "weather_ingest_rejections_total{point_type=\"wind\",reason=\"malformed\"} 1\n"));
+        assertTrue(metrics, metrics.contains(
+                "weather_ingest_rejections_total{point_type=\"unknown\",reason=\"unknown_point_type\"} 1\n"));
+        assertTrue(metrics, metrics.contains("# TYPE weather_lock_wait_seconds summary\n"));
+    }
+
+    /**
+     * Asserts a lock is only timed when another thread holds it.
+     * @throws Exception
+     */
+    @Test
+    public void testLockWait() throws Exception {
+        ReentrantLock lock = new ReentrantLock();
+        LatencyHistogram waits = new LatencyHistogram();
+        WeatherMetrics.lock(lock, waits);
+        lock.unlock();
+        assertEquals(0, waits.count());
+
+        CountDownLatch held = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            held.countDown();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lock.unlock();
+        });
+        holder.start();
+        held.await();
+        WeatherMetrics.lock(lock, waits);
+        lock.unlock();
+        holder.join();
+        assertEquals(1, waits.count());
+        assertTrue(waits.max() > 10000000);
+    }
+}
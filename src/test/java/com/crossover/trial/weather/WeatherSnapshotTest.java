@@ -0,0 +1,121 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+/**
+ * Saves the service state to a snapshot and restores it.
+ * @author daniel
+ *
+ */
+public class WeatherSnapshotTest {
+
+    private WeatherQueryEndpoint _query = new RestWeatherQueryEndpoint();
+
+    private WeatherCollectorEndpoint _update = new RestWeatherCollectorEndpoint();
+
+    private Gson _gson = new Gson();
+
+    @Before
+    public void setUp() throws Exception {
+        AirportService.getInstance().init();
+    }
+
+    /**
+     * Asserts airports, readings and request statistics are the same after a restore, and that state changed
+     * after the snapshot is discarded.
+     * @throws Exception
+     */
+    @Test
+    public void testRestore() throws Exception {
+        DataPoint dp = new DataPoint.Builder()
+                .withCount(10).withFirst(10).withMean(20.5).withThird(30).withSecond(22).build();
+        _update.updateWeather("BOS", "wind", _gson.toJson(dp));
+        _update.updateWeather("BOS", "temperature", _gson.toJson(dp));
+        _update.updateWeather("JFK", "precipitation", _gson.toJson(dp));
+        _update.addAirport("MDE", "6.164536", "-75.423119");
+        _update.deleteAirport("EWR");
+        _query.weather("BOS", "0");
+        _query.weather("JFK", "250");
+        _query.weather("XXX", "5000");
+        String bos = AtmosphericInformationJson.weather(_query, "BOS", "0");
+        String jfk = AtmosphericInformationJson.weather(_query, "JFK", "200");
+        String ping = _query.ping();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WeatherSnapshot.write(out);
+        AirportService.getInstance().init();
+        _update.addAirport("CLO", "3.543", "-76.381");
+        _update.updateWeather("MMU", "wind", _gson.toJson(dp));
+
+        assertEquals(5, WeatherSnapshot.restore(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(ping, _query.ping());
+        assertEquals(bos, AtmosphericInformationJson.weather(_query, "BOS", "0"));
+        assertEquals(jfk, AtmosphericInformationJson.weather(_query, "JFK", "200"));
+        assertEquals("MDE", ((List<String>) _update.getAirports().getEntity()).get(4));
+        assertNull(AirportService.findAirportData("EWR"));
+        assertNull(AirportService.findAirportData("CLO"));
+        assertEquals(0, ((List<?>) _query.weather("MMU", "0").getEntity()).size());
+    }
+
+    /**
+     * Asserts iata codes are restored byte for byte, whatever characters they hold.
+     * @throws Exception
+     */
+    @Test
+    public void testRestoreCodes() throws Exception {
+        String[] codes = {"\u00c5RH", "\u4e2d\u56fd", "ABCDEFGH", "\ud83d\ude00"};
+        for (String code : codes) {
+            assertEquals(code, 200, _update.addAirport(code, "10", "10").getStatus());
+        }
+        List<String> airports = (List<String>) _update.getAirports().getEntity();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WeatherSnapshot.write(out);
+
+        AirportService.getInstance().init();
+        assertEquals(9, WeatherSnapshot.restore(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(airports, _update.getAirports().getEntity());
+    }
+
+    /**
+     * Corrupts an airport's latitude in a snapshot, and asserts the restore skips that airport and keeps the
+     * others with their readings.
+     * @throws Exception
+     */
+    @Test
+    public void testRestoreSkipsInvalidAirport() throws Exception {
+        DataPoint dp = new DataPoint.Builder()
+                .withCount(10).withFirst(10).withMean(20.5).withThird(30).withSecond(22).build();
+        _update.addAirport("MDE", "6.164536", "-75.423119");
+        _update.updateWeather("MDE", "wind", _gson.toJson(dp));
+        _update.updateWeather("BOS", "wind", _gson.toJson(dp));
+        String bos = AtmosphericInformationJson.weather(_query, "BOS", "0");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WeatherSnapshot.write(out);
+
+        byte[] bytes = out.toByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long latitude = Double.doubleToLongBits(6.164536);
+        int at = 0;
+        while (buffer.getLong(at) != latitude) {
+            at++;
+        }
+        buffer.putDouble(at, 100);
+
+        AirportService.getInstance().init();
+        assertEquals(5, WeatherSnapshot.restore(new ByteArrayInputStream(bytes)));
+        assertNull(AirportService.findAirportData("MDE"));
+        assertEquals(bos, AtmosphericInformationJson.weather(_query, "BOS", "0"));
+        assertEquals(5, ((List<String>) _update.getAirports().getEntity()).size());
+    }
+}
@@ -0,0 +1,246 @@
+package com.crossover.trial.weather;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+/**
+ * Logs mutations to a write ahead log and replays them.
+ * @author daniel
+ *
+ */
+public class WriteAheadLogTest {
+
+    private WeatherQueryEndpoint _query = new RestWeatherQueryEndpoint();
+
+    private WeatherCollectorEndpoint _update = new RestWeatherCollectorEndpoint();
+
+    private Gson _gson = new Gson();
+
+    private Path dir;
+
+    private Path base;
+
+    @Before
+    public void setUp() throws Exception {
+        AirportService.getInstance().init();
+        dir = Files.createTempDirectory("wal");
+        base = dir.resolve("weather.wal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        AirportService.setLog(null);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * Asserts the state is the same after replaying the log over a snapshot taken before the updates.
+     * @throws Exception
+     */
+    @Test
+    public void testReplay() throws Exception {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        WeatherSnapshot.write(snapshot);
+        String before = AtmosphericInformationJson.weather(_query, "BOS", "0");
+
+        WriteAheadLog log = new WriteAheadLog(base, 0);
+        AirportService.setLog(log);
+        DataPoint dp = new DataPoint.Builder()
+                .withCount(10).withFirst(10).withMean(20.5).withThird(30).withSecond(22).build();
+        _update.updateWeather("BOS", "wind", _gson.toJson(dp));
+        _update.updateWeather("BOS", "temperature", _gson.toJson(dp));
+        _update.addAirport("MDE", "6.164536", "-75.423119");
+        _update.updateWeather("MDE", "humidity", _gson.toJson(dp));
+        _update.deleteAirport("EWR");
+        AirportService.newAirports(Arrays.asList(airport("CLO", 3.543, -76.381)));
+        String bos = AtmosphericInformationJson.weather(_query, "BOS", "0");
+        String mde = AtmosphericInformationJson.weather(_query, "MDE", "0");
+        List<String> airports = (List<String>) _update.getAirports().getEntity();
+        log.close();
+        AirportService.setLog(null);
+
+        WeatherSnapshot.restore(new ByteArrayInputStream(snapshot.toByteArray()));
+        assertEquals(before, AtmosphericInformationJson.weather(_query, "BOS", "0"));
+        assertEquals(6, WriteAheadLog.replay(base));
+        assertEquals(bos, AtmosphericInformationJson.weather(_query, "BOS", "0"));
+        assertEquals(mde, AtmosphericInformationJson.weather(_query, "MDE", "0"));
+        assertEquals(airports, _update.getAirports().getEntity());
+        assertNull(AirportService.findAirportData("EWR"));
+    }
+
+    /**
+     * Asserts a checkpoint deletes the segments older than the one written when it started, and that replaying
+     * the kept segments over the checkpoint leaves the same state.
+     * @throws Exception
+     */
+    @Test
+    public void testCheckpoint() throws Exception {
+        Path snapshot = dir.resolve("weather.snapshot");
+        WriteAheadLog log = new WriteAheadLog(base, 1000);
+        AirportService.setLog(log);
+        _update.addAirport("MDE", "6.164536", "-75.423119");
+        WeatherSnapshot.checkpoint(snapshot, log);
+        _update.addAirport("CLO", "3.543", "-76.381");
+        WeatherSnapshot.checkpoint(snapshot, log);
+        _update.deleteAirport("MDE");
+        List<String> airports = (List<String>) _update.getAirports().getEntity();
+        log.close();
+        AirportService.setLog(null);
+
+        assertFalse(Files.exists(dir.resolve("weather.wal.1")));
+        assertTrue(Files.exists(dir.resolve("weather.wal.2")));
+        assertTrue(Files.exists(dir.resolve("weather.wal.3")));
+
+        AirportService.getInstance().init();
+        WeatherSnapshot.restore(snapshot);
+        assertEquals(2, WriteAheadLog.replay(base));
+        assertEquals(airports, _update.getAirports().getEntity());
+    }
+
+    /**
+     * Registers airports one at a time, at the edges of the valid range and out of it, and asserts replay restores
+     * exactly the airports which were accepted.
+     * @throws Exception
+     */
+    @Test
+    public void testReplayRegisteredAirports() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(base, 0);
+        AirportService.setLog(log);
+        assertEquals(200, _update.addAirport("NPL", "90", "-180").getStatus());
+        assertEquals(200, _update.addAirport("SPL", "-90", "180").getStatus());
+        assertEquals(400, _update.addAirport("ADZ", "100", "500").getStatus());
+        assertEquals(400, _update.addAirport("NAN", "NaN", "0").getStatus());
+        List<String> airports = (List<String>) _update.getAirports().getEntity();
+        log.close();
+        AirportService.setLog(null);
+
+        AirportService.getInstance().init();
+        assertEquals(2, WriteAheadLog.replay(base));
+        assertEquals(airports, _update.getAirports().getEntity());
+        assertEquals(90, AirportService.findAirportData("NPL").getLatitude(), 0);
+        assertEquals(180, AirportService.findAirportData("SPL").getLongitude(), 0);
+        assertNull(AirportService.findAirportData("ADZ"));
+    }
+
+    /**
+     * Asserts an oversized iata code is refused before it is logged, so replay still reaches the airports logged
+     * after it, and that the log itself refuses a record replay could not read.
+     * @throws Exception
+     */
+    @Test
+    public void testOversizedCode() throws Exception {
+        char[] chars = new char[1100];
+        Arrays.fill(chars, 'X');
+        String code = new String(chars);
+        WriteAheadLog log = new WriteAheadLog(base, 0);
+        AirportService.setLog(log);
+        assertEquals(400, _update.addAirport(code, "1", "1").getStatus());
+        assertEquals(400, _update.addAirport("ABCDEFGHI", "1", "1").getStatus());
+        assertEquals(Arrays.asList(AirportStatus.MALFORMED),
+                AirportService.newAirports(Arrays.asList(airport(code, 1, 1))));
+        assertEquals(200, _update.addAirport("ABCDEFGH", "1", "1").getStatus());
+        assertEquals(200, _update.addAirport("ZZZ", "2", "2").getStatus());
+        try {
+            log.newAirport(code, 1, 1);
+            fail("unreplayable record accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        log.close();
+        AirportService.setLog(null);
+
+        AirportService.getInstance().init();
+        assertEquals(2, WriteAheadLog.replay(base));
+        assertTrue(AirportService.findAirportData("ABCDEFGH") != null);
+        assertTrue(AirportService.findAirportData("ZZZ") != null);
+    }
+
+    /**
+     * Starts with the bundled airports file, deletes one of its airports and restarts, first from the log alone
+     * then from a checkpoint. Asserts the airport stays deleted and that the file's airports are not logged.
+     * @throws Exception
+     */
+    @Test
+    public void testRestartAfterDeletingPreloadedAirport() throws Exception {
+        String airports = Paths.get(getClass().getResource("/airports.dat").toURI()).toString();
+        Path snapshot = dir.resolve("weather.snapshot");
+        WriteAheadLog log = WeatherServer.restore(airports, snapshot, base, 0);
+        assertTrue(AirportService.findAirportData("STN") != null);
+        _update.deleteAirport("STN");
+        log.close();
+        AirportService.setLog(null);
+
+        log = WeatherServer.restore(airports, snapshot, base, 0);
+        assertNull(AirportService.findAirportData("STN"));
+        assertTrue(AirportService.findAirportData("LHR") != null);
+        log.close();
+        AirportService.setLog(null);
+        assertEquals(0, Files.size(dir.resolve("weather.wal.2")));
+
+        log = WeatherServer.restore(airports, snapshot, base, 0);
+        WeatherSnapshot.checkpoint(snapshot, log);
+        log.close();
+        AirportService.setLog(null);
+        List<String> expected = (List<String>) _update.getAirports().getEntity();
+
+        log = WeatherServer.restore(airports, snapshot, base, 0);
+        log.close();
+        AirportService.setLog(null);
+        assertNull(AirportService.findAirportData("STN"));
+        assertEquals(expected, _update.getAirports().getEntity());
+    }
+
+    /**
+     * Asserts replay stops at a record cut short by a crash, keeping the records before it.
+     * @throws Exception
+     */
+    @Test
+    public void testTruncatedTail() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(base, 0);
+        AirportService.setLog(log);
+        _update.addAirport("MDE", "6.164536", "-75.423119");
+        _update.addAirport("CLO", "3.543", "-76.381");
+        log.close();
+        AirportService.setLog(null);
+
+        Path segment = dir.resolve("weather.wal.1");
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 3));
+
+        AirportService.getInstance().init();
+        assertEquals(1, WriteAheadLog.replay(base));
+        assertTrue(AirportService.findAirportData("MDE") != null);
+        assertNull(AirportService.findAirportData("CLO"));
+    }
+
+    private static AirportData airport(String iata, double latitude, double longitude) {
+        AirportData ad = new AirportData();
+        ad.setIata(iata);
+        ad.setLatitude(latitude);
+        ad.setLongitude(longitude);
+        return ad;
+    }
+}